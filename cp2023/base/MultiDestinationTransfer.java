@@ -0,0 +1,6 @@
+package cp2023.base;
+
+// Marks transfers for which every alternative destination is as good as the requested one.
+// The transfer waits for all of them at once and is rerouted to the first that has a slot.
+public interface MultiDestinationTransfer extends ReroutableTransfer {
+}
@@ -0,0 +1,12 @@
+package cp2023.base;
+
+import java.util.List;
+
+// A transfer that may be sent to another device when its destination cannot take it.
+// After reroute, getDestinationDeviceId has to return the new destination.
+public interface ReroutableTransfer extends ComponentTransfer {
+
+    public List<DeviceId> getAlternativeDestinationIds();
+
+    public void reroute(DeviceId destination);
+}
@@ -0,0 +1,6 @@
+package cp2023.base;
+
+// Marks transfers whose prepare is read-only and idempotent, so the system may run it
+// while the transfer still waits for a slot. Only perform is gated on the reservation.
+public interface SpeculativelyPreparable extends ComponentTransfer {
+}
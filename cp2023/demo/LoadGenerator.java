@@ -0,0 +1,686 @@
+package cp2023.demo;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.StorageSystem;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.DurationModel;
+import cp2023.solution.PerformLimiter;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+import cp2023.solution.TraceRecorder;
+import cp2023.solution.TransferWatchdog;
+
+/*
+ * Load generator for sizing and regression runs.
+ *
+ * Usage: java cp2023.demo.LoadGenerator [--option=value ...]
+ *   --devices=8            number of devices
+ *   --capacity=16          slots per device, or a comma separated list used cyclically
+ *   --fill=0.75            initial fraction of occupied slots
+ *   --mix=20:60:20         add:move:remove weights
+ *   --zipf=1.0             skew of destination choice, 0 means uniform
+ *   --cycles=0.1           probability that a move posts its reverse for another thread to pick up
+ *   --threads=16           number of issuing threads
+ *   --prepare=exp:2        prepare duration in ms: fixed:N, uniform:A:B or exp:MEAN
+ *   --perform=exp:5        perform duration in ms, same syntax
+ *   --limits=0:0:0         global:in:out limits on concurrent perform phases, 0 means unlimited
+ *   --combining            apply post-perform bookkeeping in batches by a single combiner
+ *   --grant-window=0       grant a slot to the waiter among the first N expected to free its own slot soonest
+ *   --spill=0:100          slots:ms, up to that many waiters per device stalled that long are let in over capacity
+ *   --trace=FILE           record every transfer for cp2023.demo.TraceReplayer
+ *   --watchdog=0           ms a transfer may wait for a slot before the wait graph is dumped as JSON, 0 disables
+ *   --duration=10          seconds of issuing
+ *   --grace=5              seconds to wait for in-flight transfers after issuing stops
+ *   --seed=42
+ *
+ * Issuing threads form a closed loop. A destination is only chosen if the device will have room once
+ * every transfer already issued has finished, so a transfer may wait for a slot that is being vacated
+ * but never for one that nothing will free. When no device has room the operation is skipped. When no
+ * component is idle a move or removal is skipped too, and the thread waits until a transfer returns one.
+ * Throughput counts only transfers that completed within the issuing window.
+ *
+ * --limits, --combining, --grant-window, --spill and --watchdog tune StorageSystemImp and are
+ * rejected for any other implementation.
+ */
+public final class LoadGenerator {
+
+    private static final int ADD = 0;
+    private static final int MOVE = 1;
+    private static final int REMOVE = 2;
+    private static final String[] OPERATION_NAMES = {"add", "move", "remove"};
+
+    private static final int QUEUE = 0;
+    private static final int PREPARE = 1;
+    private static final int HANDOFF = 2;
+    private static final int PERFORM = 3;
+    private static final int TOTAL = 4;
+    private static final String[] PHASE_NAMES = {"queue", "prepare", "handoff", "perform", "total"};
+
+    private final int devices;
+    private final int[] capacities;
+    private final double fill;
+    private final int[] mix;
+    private final double cycles;
+    private final int threads;
+    private final Duration prepareDuration;
+    private final Duration performDuration;
+    private final int[] performLimits;
+    private final boolean combining;
+    private final int grantWindow;
+    private final long watchdogMillis;
+    private final long[] spill;
+    private final String tracePath;
+    private TraceRecorder recorder;
+    private final long durationNanos;
+    private final long graceMillis;
+    private final long seed;
+    private final ZipfSampler destinationSampler;
+
+    private final DeviceId[] deviceIds;
+    private final List<ConcurrentLinkedDeque<ComponentId>> idleComponents;
+    // Components that are not being transferred, by device index
+    private final Object idleSignal;
+    private final AtomicInteger idleWaiters;
+    private final AtomicInteger outstanding;
+    // Threads waiting for an idle component are woken when one is returned or no transfer is left to return one
+    private final AtomicInteger componentIdGenerator;
+    private final AtomicReference<int[]> openExchange;
+    // Reverse of a recently issued move, waiting for a thread to close the cycle
+    private final AtomicIntegerArray projectedOccupancy;
+    // Components each device will hold once every issued transfer has finished
+    private final LongAdder[] completed;
+    private final LongAdder completedInWindow;
+    private final LongAdder skipped;
+    private final LongAdder skippedIdle;
+    private final Map<String, LongAdder> failures;
+
+    private LoadGenerator(Map<String, String> options) {
+        devices = Integer.parseInt(options.getOrDefault("devices", "8"));
+        capacities = parseCapacities(options.getOrDefault("capacity", "16"), devices);
+        fill = Double.parseDouble(options.getOrDefault("fill", "0.75"));
+        mix = parseMix(options.getOrDefault("mix", "20:60:20"));
+        cycles = Double.parseDouble(options.getOrDefault("cycles", "0.1"));
+        threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        prepareDuration = Duration.parse(options.getOrDefault("prepare", "exp:2"));
+        performDuration = Duration.parse(options.getOrDefault("perform", "exp:5"));
+        performLimits = parseLimits(options.getOrDefault("limits", "0:0:0"));
+        combining = options.containsKey("combining");
+        grantWindow = Integer.parseInt(options.getOrDefault("grant-window", "0"));
+        watchdogMillis = Long.parseLong(options.getOrDefault("watchdog", "0"));
+        tracePath = options.get("trace");
+        spill = parseSpill(options.getOrDefault("spill", "0:100"));
+        durationNanos = (long) (Double.parseDouble(options.getOrDefault("duration", "10")) * 1e9);
+        graceMillis = (long) (Double.parseDouble(options.getOrDefault("grace", "5")) * 1e3);
+        seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        destinationSampler = new ZipfSampler(devices, Double.parseDouble(options.getOrDefault("zipf", "1.0")));
+
+        if (devices < 2 || threads < 1 || fill < 0 || fill > 1 || cycles < 0 || cycles > 1) {
+            throw new IllegalArgumentException("invalid load parameters");
+        }
+
+        deviceIds = new DeviceId[devices];
+        idleComponents = new ArrayList<>(devices);
+        for (int i = 0; i < devices; ++i) {
+            deviceIds[i] = new DeviceId(i + 1);
+            idleComponents.add(new ConcurrentLinkedDeque<>());
+        }
+        idleSignal = new Object();
+        idleWaiters = new AtomicInteger(0);
+        outstanding = new AtomicInteger(0);
+        componentIdGenerator = new AtomicInteger(0);
+        openExchange = new AtomicReference<>();
+        projectedOccupancy = new AtomicIntegerArray(devices);
+        completed = new LongAdder[OPERATION_NAMES.length];
+        for (int i = 0; i < completed.length; ++i) {
+            completed[i] = new LongAdder();
+        }
+        completedInWindow = new LongAdder();
+        skipped = new LongAdder();
+        skippedIdle = new LongAdder();
+        failures = new ConcurrentHashMap<>();
+    }
+
+    private static final Set<String> OPTIONS = Set.of(
+            "devices", "capacity", "fill", "mix", "zipf", "cycles", "threads", "prepare", "perform", "limits",
+            "combining", "grant-window", "spill", "trace", "watchdog", "duration", "grace", "seed");
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("unexpected argument " + arg);
+            }
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+            if (name.equals("virtual")) {
+                throw new IllegalArgumentException("--virtual is not supported, the generator targets Java 17");
+            }
+            if (!OPTIONS.contains(name)) {
+                throw new IllegalArgumentException("unknown option --" + name);
+            }
+            options.put(name, eq < 0 ? "" : arg.substring(eq + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+
+    private void run() {
+        StorageSystem system = setupSystem();
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+
+        List<Thread> workers = new ArrayList<>(threads);
+        List<PhaseSamples> samples = new ArrayList<>(threads);
+        for (int i = 0; i < threads; ++i) {
+            PhaseSamples workerSamples = new PhaseSamples();
+            Random random = new Random(seed + i);
+            samples.add(workerSamples);
+            StorageSystem issued = recorder != null ? recorder : system;
+            workers.add(newThread(() -> issueUntil(issued, deadline, random, workerSamples)));
+        }
+        TransferWatchdog watchdog = null;
+        if (watchdogMillis > 0) {
+            watchdog = new TransferWatchdog(tunable(system, "--watchdog"), watchdogMillis, Math.max(1, watchdogMillis / 4),
+                    (graph, overdue) -> System.err.println(graph.toJson()));
+            watchdog.start();
+        }
+        for (Thread t : workers) {
+            t.start();
+        }
+
+        int stuck = 0;
+        long graceDeadline = deadline + graceMillis * 1_000_000L;
+        for (Thread t : workers) {
+            try {
+                long left = Math.max(1, (graceDeadline - System.nanoTime()) / 1_000_000L);
+                t.join(left);
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+            if (t.isAlive()) {
+                stuck++;
+            }
+        }
+        long elapsed = Math.min(System.nanoTime(), graceDeadline) - start;
+        long window = Math.min(durationNanos, elapsed);
+        if (watchdog != null) {
+            watchdog.stop();
+            if (stuck > 0) {
+                System.err.println(watchdog.dump().toDot());
+            }
+        }
+
+        report(system, samples, elapsed, window, stuck);
+        if (recorder != null) {
+            recorder.close();
+            System.out.printf("trace: %d transfers written to %s%n", recorder.getRecordedTransfers(), tracePath);
+        }
+    }
+
+    private StorageSystem setupSystem() {
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(devices);
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>();
+
+        for (int i = 0; i < devices; ++i) {
+            deviceCapacities.put(deviceIds[i], capacities[i]);
+            int initial = (int) Math.floor(capacities[i] * fill);
+            projectedOccupancy.set(i, initial);
+            for (int j = 0; j < initial; ++j) {
+                ComponentId component = new ComponentId(componentIdGenerator.incrementAndGet());
+                initialComponentMapping.put(component, deviceIds[i]);
+                idleComponents.get(i).add(component);
+            }
+        }
+        StorageSystem system = StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+        if (performLimits[0] + performLimits[1] + performLimits[2] > 0) {
+            tunable(system, "--limits").setPerformLimiter(
+                    new PerformLimiter(performLimits[0], performLimits[1], performLimits[2]));
+        }
+        if (combining) {
+            tunable(system, "--combining").setCombining(true);
+        }
+        if (grantWindow > 1) {
+            StorageSystemImp imp = tunable(system, "--grant-window");
+            imp.setDurationModel(new DurationModel(0.1));
+            imp.setGrantWindow(grantWindow);
+        }
+        if (spill[0] > 0) {
+            tunable(system, "--spill").setSpillSlots((int) spill[0], spill[1]);
+        }
+        if (tracePath != null) {
+            recorder = new TraceRecorder(system, Paths.get(tracePath), deviceCapacities, initialComponentMapping);
+        }
+        return system;
+    }
+
+    private static StorageSystemImp tunable(StorageSystem system, String option) {
+        if (!(system instanceof StorageSystemImp)) {
+            throw new IllegalArgumentException(option + " needs StorageSystemImp, got " + system.getClass().getName());
+        }
+        return (StorageSystemImp) system;
+    }
+
+    private void issueUntil(StorageSystem system, long deadline, Random random, PhaseSamples samples) {
+        while (System.nanoTime() < deadline) {
+            int operation = pickOperation(random);
+            int source = -1;
+            int destination = -1;
+            ComponentId component;
+
+            if (operation == ADD) {
+                destination = claimDestination(destinationSampler.sample(random), -1);
+                if (destination < 0) {
+                    skipped.increment();
+                    continue;
+                }
+                component = new ComponentId(componentIdGenerator.incrementAndGet());
+            } else {
+                int[] exchange = operation == MOVE ? openExchange.getAndSet(null) : null;
+                if (exchange != null) {
+                    source = exchange[0];
+                    destination = exchange[1];
+                    component = idleComponents.get(source).poll();
+                } else {
+                    source = random.nextInt(devices);
+                    component = null;
+                    for (int i = 0; i < devices && component == null; ++i) {
+                        component = idleComponents.get((source + i) % devices).poll();
+                        if (component != null) {
+                            source = (source + i) % devices;
+                        }
+                    }
+                    if (operation == MOVE) {
+                        destination = pickOtherDevice(random, source);
+                    }
+                }
+                if (component == null) {
+                    skippedIdle.increment();
+                    awaitIdle(deadline);
+                    continue;
+                }
+                if (operation == MOVE) {
+                    destination = claimDestination(destination, source);
+                    if (destination < 0) {
+                        skipped.increment();
+                        returnIdle(source, component);
+                        continue;
+                    }
+                    if (exchange == null && random.nextDouble() < cycles) {
+                        openExchange.set(new int[] {destination, source});
+                    }
+                }
+                projectedOccupancy.decrementAndGet(source);
+            }
+
+            TimedTransfer transfer = new TimedTransfer(
+                    component,
+                    source >= 0 ? deviceIds[source] : null,
+                    destination >= 0 ? deviceIds[destination] : null,
+                    prepareDuration.sample(random),
+                    performDuration.sample(random));
+            outstanding.incrementAndGet();
+            try {
+                transfer.issued = System.nanoTime();
+                system.execute(transfer);
+                transfer.returned = System.nanoTime();
+                completed[operation].increment();
+                if (transfer.returned <= deadline) {
+                    completedInWindow.increment();
+                }
+                samples.record(transfer);
+                if (destination >= 0) {
+                    returnIdle(destination, component);
+                }
+            } catch (TransferException e) {
+                failures.computeIfAbsent(e.getClass().getSimpleName(), k -> new LongAdder()).increment();
+                if (destination >= 0) {
+                    projectedOccupancy.decrementAndGet(destination);
+                }
+                if (source >= 0) {
+                    projectedOccupancy.incrementAndGet(source);
+                    returnIdle(source, component);
+                }
+            } finally {
+                if (outstanding.decrementAndGet() == 0) {
+                    wakeIdleWaiters();
+                }
+            }
+        }
+    }
+
+    private void returnIdle(int device, ComponentId component) {
+        idleComponents.get(device).add(component);
+        wakeIdleWaiters();
+    }
+
+    // Waiters register before they look at the queues, so either they see the component or it sees them
+    private void wakeIdleWaiters() {
+        if (idleWaiters.get() > 0) {
+            synchronized (idleSignal) {
+                idleSignal.notifyAll();
+            }
+        }
+    }
+
+    // Gives up at once if no transfer is running, nothing would return a component then
+    private void awaitIdle(long deadline) {
+        synchronized (idleSignal) {
+            idleWaiters.incrementAndGet();
+            try {
+                long left = deadline - System.nanoTime();
+                while (!hasIdle() && outstanding.get() > 0 && left > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(idleSignal, left);
+                    left = deadline - System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            } finally {
+                idleWaiters.decrementAndGet();
+            }
+        }
+    }
+
+    private boolean hasIdle() {
+        for (ConcurrentLinkedDeque<ComponentId> idle : idleComponents) {
+            if (!idle.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int pickOperation(Random random) {
+        int total = mix[ADD] + mix[MOVE] + mix[REMOVE];
+        int r = random.nextInt(total);
+        if (r < mix[ADD]) {
+            return ADD;
+        }
+        return r < mix[ADD] + mix[MOVE] ? MOVE : REMOVE;
+    }
+
+    private int pickOtherDevice(Random random, int source) {
+        int destination = destinationSampler.sample(random);
+        for (int attempt = 0; destination == source && attempt < 3; ++attempt) {
+            destination = destinationSampler.sample(random);
+        }
+        return destination == source ? (source + 1) % devices : destination;
+    }
+
+    // Reserves a slot on the preferred device, or on the next one with room, in the projected occupancy.
+    // Returns -1 if no device other than the source will have room.
+    private int claimDestination(int preferred, int source) {
+        for (int i = 0; i < devices; ++i) {
+            int candidate = (preferred + i) % devices;
+            if (candidate == source) {
+                continue;
+            }
+            int projected = projectedOccupancy.get(candidate);
+            while (projected < capacities[candidate]) {
+                if (projectedOccupancy.compareAndSet(candidate, projected, projected + 1)) {
+                    return candidate;
+                }
+                projected = projectedOccupancy.get(candidate);
+            }
+        }
+        return -1;
+    }
+
+    private static Thread newThread(Runnable task) {
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void report(StorageSystem system, List<PhaseSamples> samples, long elapsedNanos, long windowNanos,
+            int stuck) {
+        System.out.printf("elapsed: %.2f s, threads: %d%n", elapsedNanos / 1e9, threads);
+        for (int i = 0; i < OPERATION_NAMES.length; ++i) {
+            System.out.printf("%-8s %10d completed%n", OPERATION_NAMES[i], completed[i].sum());
+        }
+        System.out.printf("throughput: %.1f transfers/s over the %.2f s issuing window%n",
+                completedInWindow.sum() / (windowNanos / 1e9), windowNanos / 1e9);
+        System.out.printf("skipped   %10d no device with room%n", skipped.sum());
+        System.out.printf("skipped   %10d no idle component%n", skippedIdle.sum());
+        for (Map.Entry<String, LongAdder> failure : new TreeMap<>(failures).entrySet()) {
+            System.out.printf("rejected  %10d %s%n", failure.getValue().sum(), failure.getKey());
+        }
+        System.out.printf("still in flight after grace period: %d%n", stuck);
+
+        System.out.printf("%-8s %10s %10s %10s %10s  (ms)%n", "phase", "p50", "p99", "p999", "max");
+        for (int phase = 0; phase < PHASE_NAMES.length; ++phase) {
+            long[] merged = PhaseSamples.merge(samples, phase);
+            Arrays.sort(merged);
+            System.out.printf("%-8s %10.3f %10.3f %10.3f %10.3f%n", PHASE_NAMES[phase],
+                    percentile(merged, 0.5), percentile(merged, 0.99),
+                    percentile(merged, 0.999), percentile(merged, 1.0));
+        }
+
+        if (system instanceof StorageSystemImp) {
+            StorageSystemImp imp = (StorageSystemImp) system;
+            long acquisitions = imp.getMutexAcquisitions();
+            long contended = imp.getContendedMutexAcquisitions();
+            System.out.printf("mutex: %d acquisitions, %d contended (%.1f%%)%n", acquisitions, contended,
+                    acquisitions == 0 ? 0.0 : 100.0 * contended / acquisitions);
+            if (spill[0] > 0) {
+                System.out.printf("spill slots granted: %d%n", imp.getSpilledGrants());
+            }
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static int[] parseCapacities(String value, int devices) {
+        String[] parts = value.split(",");
+        int[] result = new int[devices];
+        for (int i = 0; i < devices; ++i) {
+            result[i] = Integer.parseInt(parts[i % parts.length].trim());
+        }
+        return result;
+    }
+
+    private static int[] parseLimits(String value) {
+        String[] parts = value.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("limits must be global:in:out");
+        }
+        return new int[] {Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+    }
+
+    private static long[] parseSpill(String value) {
+        String[] parts = value.split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("spill must be slots:ms");
+        }
+        return new long[] {Integer.parseInt(parts[0]), Long.parseLong(parts[1])};
+    }
+
+    private static int[] parseMix(String value) {
+        String[] parts = value.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("mix must be add:move:remove");
+        }
+        int[] result = new int[3];
+        for (int i = 0; i < 3; ++i) {
+            result[i] = Integer.parseInt(parts[i]);
+        }
+        if (result[ADD] + result[MOVE] + result[REMOVE] <= 0) {
+            throw new IllegalArgumentException("mix must have a positive weight");
+        }
+        return result;
+    }
+
+    private final static class Duration {
+        private final String kind;
+        private final double a;
+        private final double b;
+
+        private Duration(String kind, double a, double b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+
+        static Duration parse(String value) {
+            String[] parts = value.split(":");
+            switch (parts[0]) {
+                case "fixed":
+                    return new Duration("fixed", Double.parseDouble(parts[1]), 0);
+                case "uniform":
+                    return new Duration("uniform", Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                case "exp":
+                    return new Duration("exp", Double.parseDouble(parts[1]), 0);
+                default:
+                    throw new IllegalArgumentException("unknown duration distribution " + value);
+            }
+        }
+
+        long sample(Random random) {
+            double millis;
+            if (kind.equals("fixed")) {
+                millis = a;
+            } else if (kind.equals("uniform")) {
+                millis = a + random.nextDouble() * (b - a);
+            } else {
+                millis = -a * Math.log(1.0 - random.nextDouble());
+            }
+            return (long) (millis * 1_000_000L);
+        }
+    }
+
+    private final static class ZipfSampler {
+        private final double[] cdf;
+
+        ZipfSampler(int n, double exponent) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; ++i) {
+                sum += 1.0 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; ++i) {
+                cdf[i] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(cdf.length - 1, index >= 0 ? index : -index - 1);
+        }
+    }
+
+    private final static class PhaseSamples {
+        private long[][] values = new long[PHASE_NAMES.length][1024];
+        private int size = 0;
+
+        void record(TimedTransfer transfer) {
+            if (size == values[0].length) {
+                for (int phase = 0; phase < values.length; ++phase) {
+                    values[phase] = Arrays.copyOf(values[phase], size * 2);
+                }
+            }
+            values[QUEUE][size] = transfer.prepareStart - transfer.issued;
+            values[PREPARE][size] = transfer.prepareEnd - transfer.prepareStart;
+            values[HANDOFF][size] = transfer.performStart - transfer.prepareEnd;
+            values[PERFORM][size] = transfer.performEnd - transfer.performStart;
+            values[TOTAL][size] = transfer.returned - transfer.issued;
+            size++;
+        }
+
+        static long[] merge(List<PhaseSamples> samples, int phase) {
+            int total = 0;
+            for (PhaseSamples s : samples) {
+                total += s.size;
+            }
+            long[] merged = new long[total];
+            int offset = 0;
+            for (PhaseSamples s : samples) {
+                System.arraycopy(s.values[phase], 0, merged, offset, s.size);
+                offset += s.size;
+            }
+            return merged;
+        }
+    }
+
+    private final static class TimedTransfer implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long prepareNanos;
+        private final long performNanos;
+        private long issued;
+        private long prepareStart;
+        private long prepareEnd;
+        private long performStart;
+        private long performEnd;
+        private long returned;
+
+        TimedTransfer(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long prepareNanos, long performNanos) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.prepareNanos = prepareNanos;
+            this.performNanos = performNanos;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            prepareStart = System.nanoTime();
+            sleepNanos(prepareNanos);
+            prepareEnd = System.nanoTime();
+        }
+
+        @Override
+        public void perform() {
+            performStart = System.nanoTime();
+            sleepNanos(performNanos);
+            performEnd = System.nanoTime();
+        }
+
+        private static void sleepNanos(long nanos) {
+            try {
+                Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package cp2023.demo;
+
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.StorageSystem;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.Trace;
+
+/*
+ * Replays a trace written by TraceRecorder against a system built by any factory class
+ * with a static newSystem(Map, Map) method.
+ *
+ * Usage: java cp2023.demo.TraceReplayer --trace=FILE [--option=value ...]
+ *   --factory=cp2023.solution.StorageSystemFactory
+ *   --speed=1.0            arrivals and phase durations are divided by this
+ *   --grace=5              seconds to wait for in-flight transfers after the last arrival
+ *
+ * Every transfer is issued at its recorded arrival on its own thread, with the recorded
+ * prepare and perform durations. Outcomes that differ from the recorded ones are counted by
+ * pair; they are expected whenever the engines order competing transfers differently.
+ */
+public final class TraceReplayer {
+
+    private final Trace trace;
+    private final String factory;
+    private final double speed;
+    private final long graceMillis;
+
+    private final long[] latencies;
+    private final AtomicReferenceArray<Trace.Outcome> outcomes;
+    // Issuers still running after the grace period keep writing, a latency is read only after its outcome
+
+    private TraceReplayer(Map<String, String> options) {
+        if (!options.containsKey("trace")) {
+            throw new IllegalArgumentException("missing --trace");
+        }
+        trace = Trace.read(Paths.get(options.get("trace")));
+        factory = options.getOrDefault("factory", "cp2023.solution.StorageSystemFactory");
+        speed = Double.parseDouble(options.getOrDefault("speed", "1.0"));
+        graceMillis = (long) (Double.parseDouble(options.getOrDefault("grace", "5")) * 1e3);
+        if (speed <= 0) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+        latencies = new long[trace.getRecords().size()];
+        outcomes = new AtomicReferenceArray<>(trace.getRecords().size());
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("unexpected argument " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                options.put(arg.substring(2), "");
+            } else {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        new TraceReplayer(options).run();
+    }
+
+    private void run() {
+        StorageSystem system = newSystem();
+        List<Trace.Record> records = trace.getRecords();
+        ExecutorService issuers = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < records.size(); ++i) {
+            Trace.Record record = records.get(i);
+            sleepNanos(start + scale(record.getArrivalNanos()) - System.nanoTime());
+            int index = i;
+            issuers.execute(() -> replay(system, record, index));
+        }
+        issuers.shutdown();
+        boolean finished;
+        try {
+            finished = issuers.awaitTermination(graceMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        report(records, elapsed, finished);
+    }
+
+    private StorageSystem newSystem() {
+        try {
+            Method newSystem = Class.forName(factory).getMethod("newSystem", Map.class, Map.class);
+            return (StorageSystem) newSystem.invoke(null, new HashMap<>(trace.getCapacities()),
+                    new HashMap<>(trace.getPlacement()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("cannot create a system with " + factory, e);
+        }
+    }
+
+    private void replay(StorageSystem system, Trace.Record record, int index) {
+        ReplayedTransfer transfer = new ReplayedTransfer(record.getComponentId(), record.getSourceDeviceId(),
+                record.getDestinationDeviceId(), scale(record.getPrepareNanos()), scale(record.getPerformNanos()));
+        Throwable failure = null;
+        long issued = System.nanoTime();
+        try {
+            system.execute(transfer);
+        } catch (TransferException | RuntimeException | Error e) {
+            failure = e;
+        }
+        latencies[index] = System.nanoTime() - issued;
+        outcomes.set(index, Trace.Outcome.of(failure));
+    }
+
+    private void report(List<Trace.Record> records, long elapsedNanos, boolean finished) {
+        double seconds = elapsedNanos / 1e9;
+        Trace.Outcome[] finishedOutcomes = new Trace.Outcome[records.size()];
+        long[] recorded = new long[records.size()];
+        long completed = 0;
+        long unfinished = 0;
+        Map<String, Long> divergence = new TreeMap<>();
+        for (int i = 0; i < records.size(); ++i) {
+            finishedOutcomes[i] = outcomes.get(i);// Later outcomes are left out of the whole report
+            recorded[i] = scale(records.get(i).getLatencyNanos());
+            if (finishedOutcomes[i] == null) {
+                unfinished++;
+                continue;
+            }
+            if (finishedOutcomes[i] == Trace.Outcome.COMPLETED) {
+                completed++;
+            }
+            if (finishedOutcomes[i] != records.get(i).getOutcome()) {
+                divergence.merge(records.get(i).getOutcome() + " -> " + finishedOutcomes[i], 1L, Long::sum);
+            }
+        }
+        long[] replayed = new long[records.size() - (int) unfinished];
+        for (int i = 0, j = 0; i < records.size(); ++i) {
+            if (finishedOutcomes[i] != null) {
+                replayed[j++] = latencies[i];
+            }
+        }
+        Arrays.sort(recorded);
+        Arrays.sort(replayed);
+
+        System.out.printf("replayed %d transfers at %.2fx in %.2f s with %s%n", records.size(), speed, seconds, factory);
+        System.out.printf("throughput: %.1f completed transfers/s%n", completed / seconds);
+        if (!finished) {
+            System.out.printf("still in flight after grace period: %d%n", unfinished);
+        }
+        System.out.printf("%-9s %10s %10s %10s %10s  (ms, recorded latencies scaled)%n", "latency", "p50", "p99",
+                "p999", "max");
+        System.out.printf("%-9s %10.3f %10.3f %10.3f %10.3f%n", "recorded", percentile(recorded, 0.5),
+                percentile(recorded, 0.99), percentile(recorded, 0.999), percentile(recorded, 1.0));
+        System.out.printf("%-9s %10.3f %10.3f %10.3f %10.3f%n", "replayed", percentile(replayed, 0.5),
+                percentile(replayed, 0.99), percentile(replayed, 0.999), percentile(replayed, 1.0));
+        long diverged = 0;
+        for (Map.Entry<String, Long> pair : divergence.entrySet()) {
+            diverged += pair.getValue();
+            System.out.printf("diverged  %10d %s%n", pair.getValue(), pair.getKey());
+        }
+        System.out.printf("outcomes matching the trace: %d of %d%n", records.size() - diverged - unfinished,
+                records.size());
+    }
+
+    private long scale(long nanos) {
+        return nanos <= 0 ? 0 : (long) (nanos / speed);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class ReplayedTransfer implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long prepareNanos;
+        private final long performNanos;
+
+        ReplayedTransfer(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long prepareNanos,
+                         long performNanos) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.prepareNanos = prepareNanos;
+            this.performNanos = performNanos;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            sleepNanos(prepareNanos);
+        }
+
+        @Override
+        public void perform() {
+            sleepNanos(performNanos);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package cp2023.exceptions;
+
+import cp2023.base.DeviceId;
+
+public final class DeviceDecommissioned extends TransferException {
+
+    private static final long serialVersionUID = 3851604217730925913L;
+
+    private final DeviceId devId;
+
+    public DeviceDecommissioned(DeviceId devId) {
+        super("device " + devId.toString() + " is being decommissioned");
+        this.devId = devId;
+    }
+
+    public DeviceId getDeviceId() {
+        return this.devId;
+    }
+}
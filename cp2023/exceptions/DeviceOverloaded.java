@@ -0,0 +1,19 @@
+package cp2023.exceptions;
+
+import cp2023.base.DeviceId;
+
+public final class DeviceOverloaded extends TransferException {
+
+    private static final long serialVersionUID = -6019352838126647240L;
+
+    private final DeviceId devId;
+
+    public DeviceOverloaded(DeviceId devId) {
+        super("too many transfers wait for device " + devId.toString());
+        this.devId = devId;
+    }
+
+    public DeviceId getDeviceId() {
+        return this.devId;
+    }
+}
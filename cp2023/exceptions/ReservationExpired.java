@@ -0,0 +1,19 @@
+package cp2023.exceptions;
+
+import cp2023.base.DeviceId;
+
+public final class ReservationExpired extends TransferException {
+
+    private static final long serialVersionUID = -2870136475928304416L;
+
+    private final DeviceId devId;
+
+    public ReservationExpired(DeviceId devId) {
+        super("reservation of slots on device " + devId.toString() + " expired or is used up");
+        this.devId = devId;
+    }
+
+    public DeviceId getDeviceId() {
+        return this.devId;
+    }
+}
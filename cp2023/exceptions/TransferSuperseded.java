@@ -0,0 +1,19 @@
+package cp2023.exceptions;
+
+import cp2023.base.ComponentId;
+
+public final class TransferSuperseded extends TransferException {
+
+    private static final long serialVersionUID = 5279431946107835512L;
+
+    private final ComponentId compId;
+
+    public TransferSuperseded(ComponentId compId) {
+        super("transfer of component " + compId.toString() + " was superseded before it started");
+        this.compId = compId;
+    }
+
+    public ComponentId getComponentId() {
+        return this.compId;
+    }
+}
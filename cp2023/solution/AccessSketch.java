@@ -0,0 +1,58 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Count-min sketch of component accesses, never underestimates; decay halves all counters
+public final class AccessSketch {
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x27D4EB2F165667C5L, 0x94D049BB133111EBL
+    };
+
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+    // depth rows of width counters, one after another
+
+    public AccessSketch(int width, int depth) {
+        if (width <= 0 || Integer.bitCount(width) != 1 || depth <= 0 || depth > SEEDS.length) {
+            throw new IllegalArgumentException("sketch width has to be a power of two and depth at most " + SEEDS.length);
+        }
+        this.depth = depth;
+        mask = width - 1;
+        counters = new AtomicLongArray(width * depth);
+    }
+
+    public void record(ComponentId component) {
+        record(component, 1);
+    }
+
+    public void record(ComponentId component, long accesses) {
+        for (int row = 0; row < depth; ++row) {
+            counters.addAndGet(index(component, row), accesses);
+        }
+    }
+
+    public long estimate(ComponentId component) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; ++row) {
+            estimate = Math.min(estimate, counters.get(index(component, row)));
+        }
+        return estimate;
+    }
+
+    // Concurrent records may be halved or not, either is fine for an estimate
+    public void decay() {
+        for (int i = 0; i < counters.length(); ++i) {
+            counters.getAndUpdate(i, count -> count >> 1);
+        }
+    }
+
+    private int index(ComponentId component, int row) {
+        long hash = (component.hashCode() ^ SEEDS[row]) * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 31;
+        return row * (mask + 1) + ((int) hash & mask);
+    }
+}
@@ -0,0 +1,40 @@
+package cp2023.solution;
+
+// Limits on transfers waiting in device queues, a limit of 0 means unlimited
+public final class AdmissionControl {
+    public enum OverloadPolicy {
+        REJECT,// Fail with DeviceOverloaded
+        WAIT,// Block outside the queue until it has room
+        TRY_ALTERNATIVE// Reroute a ReroutableTransfer, reject otherwise
+    }
+
+    private final int perDeviceQueueLimit;
+    private final int globalQueueLimit;
+    private final OverloadPolicy policy;
+
+    public AdmissionControl(int perDeviceQueueLimit, int globalQueueLimit, OverloadPolicy policy) {
+        if (perDeviceQueueLimit < 0 || globalQueueLimit < 0 || policy == null) {
+            throw new IllegalArgumentException("Invalid admission limits");
+        }
+        this.perDeviceQueueLimit = perDeviceQueueLimit;
+        this.globalQueueLimit = globalQueueLimit;
+        this.policy = policy;
+    }
+
+    public int getPerDeviceQueueLimit() {
+        return perDeviceQueueLimit;
+    }
+
+    public int getGlobalQueueLimit() {
+        return globalQueueLimit;
+    }
+
+    public OverloadPolicy getPolicy() {
+        return policy;
+    }
+
+    boolean admits(int deviceQueueLength, int queuedTransfers) {
+        return (perDeviceQueueLimit == 0 || deviceQueueLength < perDeviceQueueLimit)
+                && (globalQueueLimit == 0 || queuedTransfers < globalQueueLimit);
+    }
+}
@@ -0,0 +1,17 @@
+package cp2023.solution;
+
+import java.util.concurrent.ThreadFactory;
+
+// Threads of background helpers, they never keep the process alive
+final class DaemonThreads {
+    private DaemonThreads() {
+    }
+
+    static ThreadFactory named(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,63 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+
+import java.util.List;
+
+public final class DeviceLoad {
+    private final DeviceId device;
+    private final DeviceTier tier;
+    private final int totalSlots;
+    private final int occupiedSlots;
+    // Slots holding a component or reserved for an incoming one
+    private final int queueLength;
+    private final List<ComponentId> idleComponents;
+    // Components stored on the device that are not being transferred
+
+    DeviceLoad(DeviceId device, DeviceTier tier, int totalSlots, int occupiedSlots, int queueLength,
+               List<ComponentId> idleComponents) {
+        this.device = device;
+        this.tier = tier;
+        this.totalSlots = totalSlots;
+        this.occupiedSlots = occupiedSlots;
+        this.queueLength = queueLength;
+        this.idleComponents = List.copyOf(idleComponents);
+    }
+
+    public DeviceId getDeviceId() {
+        return device;
+    }
+
+    public DeviceTier getTier() {
+        return tier;
+    }
+
+    public int getTotalSlots() {
+        return totalSlots;
+    }
+
+    public int getOccupiedSlots() {
+        return occupiedSlots;
+    }
+
+    public int getFreeSlots() {
+        return Math.max(0, totalSlots - occupiedSlots);
+    }
+
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    public List<ComponentId> getIdleComponents() {
+        return idleComponents;
+    }
+
+    // A decommissioned device has no slots, anything left on it counts as overflow
+    public double getUtilization() {
+        if (totalSlots == 0) {
+            return occupiedSlots == 0 ? 0.0 : Double.POSITIVE_INFINITY;
+        }
+        return (double) occupiedSlots / totalSlots;
+    }
+}
@@ -0,0 +1,8 @@
+package cp2023.solution;
+
+// Speed class of a device, declared from the fastest to the slowest
+public enum DeviceTier {
+    FAST,
+    STANDARD,
+    SLOW
+}
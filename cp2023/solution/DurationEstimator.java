@@ -0,0 +1,50 @@
+package cp2023.solution;
+
+// Online estimate of a duration: exponentially weighted mean and a histogram of power-of-two buckets
+public final class DurationEstimator {
+    private final double alpha;
+    private double mean;
+    private long count;
+    private final long[] buckets;
+    // Bucket i counts durations below 2^i nanoseconds
+
+    DurationEstimator(double alpha) {
+        this.alpha = alpha;
+        buckets = new long[Long.SIZE + 1];
+    }
+
+    synchronized void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        mean = count == 0 ? nanos : mean + alpha * (nanos - mean);
+        count++;
+        buckets[Long.SIZE - Long.numberOfLeadingZeros(nanos)]++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    // NaN before the first sample
+    public synchronized double getMeanNanos() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    // Upper bound of the bucket holding the quantile, at most twice the true value; -1 before the first sample
+    public synchronized long getQuantileNanos(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile out of range");
+        }
+        if (count == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; ++i) {
+            seen += buckets[i];
+            if (seen >= Math.max(1, rank)) {
+                return i >= Long.SIZE - 1 ? Long.MAX_VALUE : 1L << i;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
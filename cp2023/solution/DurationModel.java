@@ -0,0 +1,79 @@
+package cp2023.solution;
+
+import cp2023.base.DeviceId;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Durations observed per device: prepare and perform of transfers leaving (OUT) and entering (IN) it,
+// and the interval between slots of the device being given up
+public final class DurationModel {
+    public enum Phase {
+        PREPARE,
+        PERFORM
+    }
+
+    public enum Direction {
+        OUT,
+        IN
+    }
+
+    private final double alpha;
+    private final Map<DeviceId, DeviceDurations> devices;
+
+    public DurationModel(double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("smoothing factor has to be in (0, 1]");
+        }
+        this.alpha = alpha;
+        devices = new ConcurrentHashMap<>();
+    }
+
+    public DurationEstimator get(DeviceId device, Phase phase, Direction direction) {
+        return durations(device).phases[phase.ordinal() * 2 + direction.ordinal()];
+    }
+
+    public DurationEstimator getSlotReleaseInterval(DeviceId device) {
+        return durations(device).releaseInterval;
+    }
+
+    void record(DeviceId source, DeviceId destination, Phase phase, long nanos) {
+        if (source != null) {
+            get(source, phase, Direction.OUT).record(nanos);
+        }
+        if (destination != null) {
+            get(destination, phase, Direction.IN).record(nanos);
+        }
+    }
+
+    void recordSlotRelease(DeviceId device) {
+        DeviceDurations durations = durations(device);
+        long now = System.nanoTime();
+        long last;
+        synchronized (durations) {
+            last = durations.lastRelease;
+            durations.lastRelease = now;
+        }
+        if (last != 0) {
+            durations.releaseInterval.record(now - last);
+        }
+    }
+
+    private DeviceDurations durations(DeviceId device) {
+        return devices.computeIfAbsent(device, d -> new DeviceDurations(alpha));
+    }
+
+    private static class DeviceDurations {
+        private final DurationEstimator[] phases;
+        private final DurationEstimator releaseInterval;
+        private long lastRelease;
+
+        public DeviceDurations(double alpha) {
+            phases = new DurationEstimator[Phase.values().length * Direction.values().length];
+            for (int i = 0; i < phases.length; ++i) {
+                phases[i] = new DurationEstimator(alpha);
+            }
+            releaseInterval = new DurationEstimator(alpha);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Progress of a running evacuation
+public final class Evacuation {
+    private final DeviceId device;
+    private final Set<ComponentId> found;
+    // Every component seen on the device since the start
+    private final Set<ComponentId> pending;
+    // Components found on the device that are still there
+    private final AtomicLong failedMoves;
+    private final long startNanos;
+    private final CompletableFuture<Void> completion;
+    private volatile boolean cancelled;
+
+    Evacuation(DeviceId device, Collection<ComponentId> components) {
+        this.device = device;
+        found = ConcurrentHashMap.newKeySet();
+        pending = ConcurrentHashMap.newKeySet();
+        components.forEach(this::found);
+        failedMoves = new AtomicLong();
+        startNanos = System.nanoTime();
+        completion = new CompletableFuture<>();
+    }
+
+    public DeviceId getDeviceId() {
+        return device;
+    }
+
+    public int getTotalComponents() {
+        return found.size();
+    }
+
+    public int getRemainingComponents() {
+        return pending.size();
+    }
+
+    // Moves that failed because the component was transferred by someone else, they are retried
+    public long getFailedMoves() {
+        return failedMoves.get();
+    }
+
+    // Estimate from the rate so far, -1 until the first component left the device
+    public long getEstimatedRemainingMillis() {
+        int remaining = pending.size();
+        int done = found.size() - remaining;
+        if (done == 0) {
+            return remaining == 0 ? 0 : -1;
+        }
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        return elapsedMillis * remaining / done;
+    }
+
+    // Completes when the components are gone, or the device is removed when decommissioning
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    // Moves already started still finish
+    public void cancel() {
+        cancelled = true;
+        completion.cancel(false);
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    Set<ComponentId> getPending() {
+        return pending;
+    }
+
+    void found(ComponentId component) {
+        found.add(component);
+        pending.add(component);
+    }
+
+    void moveFailed() {
+        failedMoves.incrementAndGet();
+    }
+}
@@ -0,0 +1,25 @@
+package cp2023.solution;
+
+// How an evacuation drains a device
+public final class EvacuationPolicy {
+    private final int perDestinationParallelism;
+    // Moves running at once into a single destination device
+    private final boolean decommission;
+    // Reject new inbound transfers and remove the device once it is empty
+
+    public EvacuationPolicy(int perDestinationParallelism, boolean decommission) {
+        if (perDestinationParallelism <= 0) {
+            throw new IllegalArgumentException("Invalid evacuation parallelism");
+        }
+        this.perDestinationParallelism = perDestinationParallelism;
+        this.decommission = decommission;
+    }
+
+    public int getPerDestinationParallelism() {
+        return perDestinationParallelism;
+    }
+
+    public boolean isDecommission() {
+        return decommission;
+    }
+}
@@ -0,0 +1,275 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.ReservationExpired;
+import cp2023.exceptions.TransferException;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Drains a device by moving its components to the others, planned in rounds from current occupancy
+public class Evacuator {
+    private static final long LEASE_MILLIS = 30_000;
+    // Lease per batch of moves while the duration model of the system has no samples
+    private static final long MIN_LEASE_MILLIS = 1_000;
+    // So a lease sized from short moves does not run out on a busy system; reservations of a round
+    // are released once its moves finish anyway
+
+    private final StorageSystemImp system;
+    private final TransferFactory transfers;
+
+    public Evacuator(StorageSystemImp system, TransferFactory transfers) {
+        if (system == null || transfers == null) {
+            throw new IllegalArgumentException("One of given parameters is null");
+        }
+        this.system = system;
+        this.transfers = transfers;
+    }
+
+    public Evacuation evacuate(DeviceId device, EvacuationPolicy policy) {
+        if (device == null || policy == null) {
+            throw new IllegalArgumentException("One of given parameters is null");
+        }
+        List<ComponentId> components = new ArrayList<>();
+        system.scanDevice(device).forEachRemaining(components::add);
+
+        Evacuation evacuation = new Evacuation(device, components);
+        CompletableFuture<Void> drained = policy.isDecommission() ? system.decommissionDevice(device) : null;
+        DaemonThreads.named("evacuation-" + device).newThread(() -> {
+            ExecutorService movers = Executors.newCachedThreadPool(DaemonThreads.named("evacuation-move"));
+            try {
+                drain(evacuation, policy, movers);
+                if (drained != null) {
+                    drained.thenRun(() -> evacuation.getCompletion().complete(null));
+                }
+                else {
+                    evacuation.getCompletion().complete(null);
+                }
+            } catch (RuntimeException e) {
+                evacuation.getCompletion().completeExceptionally(e);
+            } finally {
+                movers.shutdown();
+            }
+        }).start();
+        return evacuation;
+    }
+
+    // Every round looks at all components on the device again, so busy ones and inbound transfers that
+    // held a slot at the start are moved once they land. A decommissioning evacuation is done when the device
+    // holds nothing at all. Otherwise the device keeps taking new transfers, so only the components that held
+    // a slot at the start are chased and the evacuation is done once none of them holds one anymore.
+    private void drain(Evacuation evacuation, EvacuationPolicy policy, ExecutorService movers) {
+        DeviceId device = evacuation.getDeviceId();
+        Set<ComponentId> pending = evacuation.getPending();
+        Set<ComponentId> chased;
+        try {
+            chased = policy.isDecommission() ? null : system.snapshotSlotHolders(device);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+
+        while (!evacuation.isCancelled()) {
+            CompletableFuture<Void> released = system.nextRelease();
+            List<DeviceLoad> snapshot = system.snapshotLoad();
+            DeviceLoad source = findLoad(snapshot, device);
+            if (source == null) {// Removed after decommissioning
+                return;
+            }
+            Set<ComponentId> holders;
+            try {
+                holders = system.snapshotSlotHolders(device);
+            } catch (IllegalArgumentException e) {
+                return;
+            }
+            if (chased != null) {
+                chased.addAll(pending);
+                holders.retainAll(chased);
+            }
+            for (ComponentId component : holders) {
+                if (device.equals(system.getPlacement(component))) {
+                    evacuation.found(component);
+                }
+            }
+            pending.removeIf(component -> !device.equals(system.getPlacement(component)));
+            if (pending.isEmpty() && (chased == null ? source.getOccupiedSlots() == 0 : holders.isEmpty())) {
+                return;
+            }
+            List<ComponentId> movable = new ArrayList<>();
+            for (ComponentId component : source.getIdleComponents()) {
+                if (pending.contains(component)) {
+                    movable.add(component);
+                }
+            }
+            if (movable.isEmpty()) {// Busy or still moving in, the next release may change that
+                awaitRelease(evacuation, released);
+                continue;
+            }
+
+            Map<DeviceId, List<ComponentId>> plan = plan(snapshot, device, movable);
+            if (plan.isEmpty()) {
+                throw new IllegalStateException("no device to evacuate " + device + " to");
+            }
+            runRound(evacuation, policy, plan, movers);
+        }
+    }
+
+    // Fills free slots starting with the closest and then the emptiest devices, the rest waits in the queues
+    // of the closest and least loaded ones
+    private Map<DeviceId, List<ComponentId>> plan(List<DeviceLoad> snapshot, DeviceId device, List<ComponentId> movable) {
+        Map<DeviceId, Integer> free = new HashMap<>();
+        Map<DeviceId, Double> pressure = new HashMap<>();
+        for (DeviceLoad load : snapshot) {
+            if (!load.getDeviceId().equals(device) && load.getTotalSlots() > 0) {
+                free.put(load.getDeviceId(), load.getFreeSlots());
+                pressure.put(load.getDeviceId(),
+                        (double) (load.getOccupiedSlots() + load.getQueueLength()) / load.getTotalSlots());
+            }
+        }
+
+        Topology topology = system.getTopology();
+        Map<DeviceId, Double> cost = new HashMap<>();
+        for (DeviceId candidate : free.keySet()) {
+            cost.put(candidate, topology == null ? 0.0 : topology.cost(device, candidate));
+        }
+
+        Map<DeviceId, List<ComponentId>> plan = new HashMap<>();
+        if (free.isEmpty()) {
+            return plan;
+        }
+        for (ComponentId component : movable) {
+            DeviceId best = null;
+            for (DeviceId candidate : free.keySet()) {
+                if (best == null || isBetter(candidate, best, free, cost, pressure)) {
+                    best = candidate;
+                }
+            }
+            if (free.get(best) > 0) {
+                free.put(best, free.get(best) - 1);
+            }
+            else {
+                pressure.put(best, pressure.get(best) + 1.0 / findLoad(snapshot, best).getTotalSlots());
+            }
+            plan.computeIfAbsent(best, d -> new ArrayList<>()).add(component);
+        }
+        return plan;
+    }
+
+    private static boolean isBetter(DeviceId candidate, DeviceId best, Map<DeviceId, Integer> free,
+                                    Map<DeviceId, Double> cost, Map<DeviceId, Double> pressure) {
+        boolean candidateHasRoom = free.get(candidate) > 0;
+        if (candidateHasRoom != free.get(best) > 0) {
+            return candidateHasRoom;
+        }
+        int byCost = Double.compare(cost.get(candidate), cost.get(best));
+        if (byCost != 0) {
+            return byCost < 0;
+        }
+        return free.get(candidate) > free.get(best)
+                || (free.get(candidate).equals(free.get(best)) && pressure.get(candidate) < pressure.get(best));
+    }
+
+    private void runRound(Evacuation evacuation, EvacuationPolicy policy, Map<DeviceId, List<ComponentId>> plan,
+                          ExecutorService movers) {
+        DeviceId device = evacuation.getDeviceId();
+        List<SlotReservation> reservations = new ArrayList<>();
+        List<Future<?>> workers = new ArrayList<>();
+
+        for (Map.Entry<DeviceId, List<ComponentId>> entry : plan.entrySet()) {
+            DeviceId destination = entry.getKey();
+            Queue<ComponentId> moves = new ConcurrentLinkedQueue<>(entry.getValue());
+
+            // Slots free right now are kept from user traffic, moves beyond them queue like any other
+            int reservable = Math.min(moves.size(), findFreeSlots(destination));
+            int parallelism = Math.min(policy.getPerDestinationParallelism(), moves.size());
+            SlotReservation reservation = reservable > 0 ? system.reserveSlots(destination, reservable,
+                    leaseMillis(device, destination, reservable, parallelism)) : null;
+            if (reservation != null) {
+                reservations.add(reservation);
+            }
+
+            for (int i = 0; i < parallelism; ++i) {
+                workers.add(movers.submit(() -> {
+                    ComponentId component;
+                    while (!evacuation.isCancelled() && (component = moves.poll()) != null) {
+                        try {
+                            move(component, device, destination, reservation);
+                            evacuation.getPending().remove(component);
+                        } catch (TransferException e) {
+                            // Moved by someone else, the next round sorts it out
+                            evacuation.moveFailed();
+                        }
+                    }
+                }));
+            }
+        }
+
+        try {
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException("panic: unexpected thread interruption");
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            for (SlotReservation reservation : reservations) {
+                reservation.release();
+            }
+        }
+    }
+
+    // The system counts the slots a reservation has left, a move that finds none left or the lease
+    // run out queues like any other
+    private void move(ComponentId component, DeviceId source, DeviceId destination, SlotReservation reservation)
+            throws TransferException {
+        if (reservation != null && reservation.getRemainingSlots() > 0) {
+            try {
+                system.execute(transfers.newTransfer(component, source, destination), reservation);
+                return;
+            } catch (ReservationExpired e) {
+                // Taken by another worker meanwhile
+            }
+        }
+        system.execute(transfers.newTransfer(component, source, destination));
+    }
+
+    // The reserved slots are taken by the first moves, run in batches of the parallelism. Each batch gets
+    // twice as long as the duration model expects a move to take, or LEASE_MILLIS without samples.
+    private long leaseMillis(DeviceId source, DeviceId destination, int reservable, int parallelism) {
+        DurationModel model = system.getDurationModel();
+        double expectedNanos = model == null ? Double.NaN
+                : model.get(source, DurationModel.Phase.PREPARE, DurationModel.Direction.OUT).getMeanNanos()
+                + model.get(destination, DurationModel.Phase.PERFORM, DurationModel.Direction.IN).getMeanNanos();
+        long perBatch = Double.isNaN(expectedNanos) ? LEASE_MILLIS : (long) Math.ceil(2 * expectedNanos / 1_000_000);
+        long batches = (reservable + parallelism - 1) / parallelism;
+        return Math.max(MIN_LEASE_MILLIS, batches * perBatch);
+    }
+
+    private int findFreeSlots(DeviceId device) {
+        DeviceLoad load = findLoad(system.snapshotLoad(), device);
+        return load == null ? 0 : load.getFreeSlots();
+    }
+
+    private static DeviceLoad findLoad(List<DeviceLoad> snapshot, DeviceId device) {
+        for (DeviceLoad load : snapshot) {
+            if (load.getDeviceId().equals(device)) {
+                return load;
+            }
+        }
+        return null;
+    }
+
+    // Cancelling the evacuation wakes it too
+    private static void awaitRelease(Evacuation evacuation, CompletableFuture<Void> released) {
+        try {
+            CompletableFuture.anyOf(released, evacuation.getCompletion()).get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        } catch (ExecutionException | CancellationException e) {
+            // Cancelled, the loop ends
+        }
+    }
+}
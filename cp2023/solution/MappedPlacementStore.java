@@ -0,0 +1,249 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// Placement kept in a memory-mapped file: an open-addressing table of fixed-width records
+// (sequence, component id, device id, flags), little endian. One process writes, any number of
+// local processes read without locks: a record is consistent when its sequence is even and
+// unchanged across the read.
+public final class MappedPlacementStore implements AutoCloseable {
+    private static final int MAGIC = 0x504C4331;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_BYTES = 16;
+    private static final int SEQUENCE = 0;
+    private static final int COMPONENT = 4;
+    private static final int DEVICE = 8;
+    private static final int FLAGS = 12;
+
+    public static final int EMPTY = 0;
+    public static final int OCCUPIED = 1;
+    public static final int REMOVED = 2;
+    // Tombstone, lookups probe past it
+    private static final int TORN_RECORD_SPINS = 1 << 16;
+    // A writer that died mid-record leaves its sequence odd, readers skip such a record after this many tries
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+
+    private MappedPlacementStore(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        mask = capacity - 1;
+    }
+
+    // Opens the file, or creates it with room for capacity records; an existing file keeps its records
+    public static MappedPlacementStore open(Path file, int capacity) {
+        if (file == null || capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("null file or capacity that is not a power of two");
+        }
+        try {
+            FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean fresh = channel.size() == 0;
+            if (!fresh) {
+                ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(header, 0);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    channel.close();
+                    throw new IllegalArgumentException(file + " is not a placement store");
+                }
+                capacity = header.getInt(8);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + (long) capacity * RECORD_BYTES);
+            if (fresh) {
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, capacity);
+                INT.setRelease(buffer, 0, MAGIC);
+            }
+            return new MappedPlacementStore(channel, buffer, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Lock-free, may run concurrently with the writer
+    public DeviceId lookup(ComponentId component) {
+        int id = component.getId();
+        for (int probe = 0; probe < capacity; ++probe) {
+            int offset = recordOffset(id, probe);
+            for (int spins = 0; spins < TORN_RECORD_SPINS; ++spins) {
+                int before = (int) INT.getAcquire(buffer, offset + SEQUENCE);
+                int key = (int) INT.get(buffer, offset + COMPONENT);
+                int device = (int) INT.get(buffer, offset + DEVICE);
+                int flags = (int) INT.get(buffer, offset + FLAGS);
+                VarHandle.loadLoadFence();
+                if ((before & 1) != 0 || before != (int) INT.getAcquire(buffer, offset + SEQUENCE)) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (flags == EMPTY) {
+                    return null;
+                }
+                if (flags == OCCUPIED && key == id) {
+                    return new DeviceId(device);
+                }
+                break;
+            }
+        }
+        return null;
+    }
+
+    // Consistent per record, not across records written meanwhile
+    public Map<ComponentId, DeviceId> readAll() {
+        Map<ComponentId, DeviceId> placement = new HashMap<>();
+        for (int slot = 0; slot < capacity; ++slot) {
+            int offset = HEADER_BYTES + slot * RECORD_BYTES;
+            for (int spins = 0; spins < TORN_RECORD_SPINS; ++spins) {
+                int before = (int) INT.getAcquire(buffer, offset + SEQUENCE);
+                int key = (int) INT.get(buffer, offset + COMPONENT);
+                int device = (int) INT.get(buffer, offset + DEVICE);
+                int flags = (int) INT.get(buffer, offset + FLAGS);
+                VarHandle.loadLoadFence();
+                if ((before & 1) == 0 && before == (int) INT.getAcquire(buffer, offset + SEQUENCE)) {
+                    if (flags == OCCUPIED) {
+                        placement.put(new ComponentId(key), new DeviceId(device));
+                    }
+                    break;
+                }
+                Thread.onSpinWait();
+            }
+        }
+        return placement;
+    }
+
+    // Writers have to be serialized by the caller. Returns false when every record holds another component.
+    boolean put(ComponentId component, DeviceId device) {
+        int id = component.getId();
+        int free = -1;
+        for (int probe = 0; probe < capacity; ++probe) {
+            int offset = recordOffset(id, probe);
+            int flags = (int) INT.get(buffer, offset + FLAGS);
+            if (flags == OCCUPIED && (int) INT.get(buffer, offset + COMPONENT) == id) {
+                write(offset, id, device.getId(), OCCUPIED);
+                return true;
+            }
+            if (flags != OCCUPIED && free < 0) {
+                free = offset;
+            }
+            if (flags == EMPTY) {
+                break;
+            }
+        }
+        if (free < 0) {
+            return false;
+        }
+        write(free, id, device.getId(), OCCUPIED);
+        return true;
+    }
+
+    void remove(ComponentId component) {
+        int id = component.getId();
+        for (int probe = 0; probe < capacity; ++probe) {
+            int offset = recordOffset(id, probe);
+            int flags = (int) INT.get(buffer, offset + FLAGS);
+            if (flags == EMPTY) {
+                return;
+            }
+            if (flags == OCCUPIED && (int) INT.get(buffer, offset + COMPONENT) == id) {
+                write(offset, id, 0, REMOVED);
+                reclaimTombstones(offset);
+                return;
+            }
+        }
+    }
+
+    // Probing is linear, so tombstones right before an empty record end no chain and can be emptied too
+    private void reclaimTombstones(int offset) {
+        if ((int) INT.get(buffer, nextOffset(offset) + FLAGS) != EMPTY) {
+            return;
+        }
+        for (int i = 0; i < capacity && (int) INT.get(buffer, offset + FLAGS) == REMOVED; ++i) {
+            write(offset, 0, 0, EMPTY);
+            offset = previousOffset(offset);
+        }
+    }
+
+    // Run by the writer before its first write; records torn by a crashed writer are dropped
+    void recover() {
+        for (int slot = 0; slot < capacity; ++slot) {
+            int offset = HEADER_BYTES + slot * RECORD_BYTES;
+            int sequence = (int) INT.get(buffer, offset + SEQUENCE);
+            if ((sequence & 1) != 0) {
+                INT.set(buffer, offset + FLAGS, REMOVED);
+                INT.setRelease(buffer, offset + SEQUENCE, sequence + 1);
+                reclaimTombstones(offset);
+            }
+        }
+    }
+
+    // Makes the store hold exactly the given placement, which has to fit
+    void replaceAll(Map<ComponentId, DeviceId> placement) {
+        for (Map.Entry<ComponentId, DeviceId> entry : readAll().entrySet()) {
+            if (!entry.getValue().equals(placement.get(entry.getKey()))) {
+                remove(entry.getKey());
+            }
+        }
+        for (Map.Entry<ComponentId, DeviceId> entry : placement.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(int offset, int component, int device, int flags) {
+        int sequence = (int) INT.get(buffer, offset + SEQUENCE);
+        INT.setVolatile(buffer, offset + SEQUENCE, sequence + 1);
+        VarHandle.storeStoreFence();
+        INT.set(buffer, offset + COMPONENT, component);
+        INT.set(buffer, offset + DEVICE, device);
+        INT.set(buffer, offset + FLAGS, flags);
+        INT.setRelease(buffer, offset + SEQUENCE, sequence + 2);
+    }
+
+    private int nextOffset(int offset) {
+        return HEADER_BYTES + ((offset - HEADER_BYTES) / RECORD_BYTES + 1 & mask) * RECORD_BYTES;
+    }
+
+    private int previousOffset(int offset) {
+        return HEADER_BYTES + ((offset - HEADER_BYTES) / RECORD_BYTES - 1 & mask) * RECORD_BYTES;
+    }
+
+    private int recordOffset(int id, int probe) {
+        int hash = id * 0x9E3779B9;
+        return HEADER_BYTES + ((hash ^ (hash >>> 16)) + probe & mask) * RECORD_BYTES;
+    }
+}
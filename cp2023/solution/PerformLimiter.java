@@ -0,0 +1,243 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+// Limits on concurrently running perform phases, a limit of 0 means unlimited
+public class PerformLimiter {
+    private static final long REFILL_MILLIS = 10;
+    // Period of the timer letting bandwidth units into the budgets
+
+    private final Semaphore global;
+    private final int perDeviceInLimit;
+    private final int perDeviceOutLimit;
+    private final Map<DeviceId, Semaphore> incoming;
+    private final Map<DeviceId, Semaphore> outgoing;
+    private final Map<DeviceId, TokenBucket> bandwidth;
+    // Optional budgets in cost units per second, charged to both devices of a transfer
+    private ScheduledExecutorService refillTimer;
+    // Started with the first budget
+    private volatile ToDoubleFunction<ComponentTransfer> cost;
+    private volatile Topology topology;
+    private volatile int perHostLimit;
+    private volatile int perRackLimit;
+    private final Map<String, SharedPermits> hostPermits;
+    private final Map<String, SharedPermits> rackPermits;
+    // Kept across topology changes, running transfers still hold some of the permits
+    private final Map<ComponentTransfer, List<Semaphore>> sharedPermits;
+    // Host and rack permits held by running transfers, so they are released even if the topology changes
+
+    public PerformLimiter(int globalLimit, int perDeviceInLimit, int perDeviceOutLimit) {
+        if (globalLimit < 0 || perDeviceInLimit < 0 || perDeviceOutLimit < 0) {
+            throw new IllegalArgumentException("negative perform limit");
+        }
+        global = globalLimit > 0 ? new Semaphore(globalLimit, true) : null;
+        this.perDeviceInLimit = perDeviceInLimit;
+        this.perDeviceOutLimit = perDeviceOutLimit;
+        incoming = new ConcurrentHashMap<>();
+        outgoing = new ConcurrentHashMap<>();
+        bandwidth = new ConcurrentHashMap<>();
+        cost = transfer -> 1.0;
+        hostPermits = new ConcurrentHashMap<>();
+        rackPermits = new ConcurrentHashMap<>();
+        sharedPermits = new ConcurrentHashMap<>();
+    }
+
+    public synchronized void setBandwidth(DeviceId device, double unitsPerSecond, double burstUnits) {
+        if (device == null || unitsPerSecond <= 0 || burstUnits <= 0) {
+            throw new IllegalArgumentException("invalid bandwidth budget");
+        }
+        bandwidth.put(device, new TokenBucket(unitsPerSecond * REFILL_MILLIS / 1000, burstUnits));
+        if (refillTimer == null) {
+            refillTimer = Executors.newSingleThreadScheduledExecutor(DaemonThreads.named("bandwidth-refill"));
+            refillTimer.scheduleAtFixedRate(this::refillBandwidth, REFILL_MILLIS, REFILL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void setCost(ToDoubleFunction<ComponentTransfer> cost) {
+        if (cost == null) {
+            throw new IllegalArgumentException("null cost function");
+        }
+        this.cost = cost;
+    }
+
+    // Limits shared by all devices of a host or a rack, a transfer between two of them holds a permit of both
+    public synchronized void setTopology(Topology topology, int perHostLimit, int perRackLimit) {
+        if (topology == null || perHostLimit < 0 || perRackLimit < 0) {
+            throw new IllegalArgumentException("invalid topology limits");
+        }
+        this.perHostLimit = perHostLimit;
+        this.perRackLimit = perRackLimit;
+        resize(hostPermits, perHostLimit);
+        resize(rackPermits, perRackLimit);
+        this.topology = topology;
+    }
+
+    // Permits are always taken in the order global, racks, hosts, outgoing, incoming, and by name within a level,
+    // so holders never wait on each other in a cycle
+    void acquire(ComponentTransfer transfer) throws InterruptedException {
+        DeviceId source = transfer.getSourceDeviceId();
+        DeviceId destination = transfer.getDestinationDeviceId();
+
+        if (!bandwidth.isEmpty()) {// Taken before any permit, so a transfer waiting for units blocks no other
+            double units = cost.applyAsDouble(transfer);
+            takeBandwidth(source, units);
+            takeBandwidth(destination, units);
+        }
+
+        if (global != null) {
+            global.acquire();
+        }
+        Topology topology = this.topology;
+        if (topology != null) {
+            List<Semaphore> held = new ArrayList<>(4);
+            acquireShared(rackPermits, perRackLimit, topology.getRack(source), topology.getRack(destination), held);
+            acquireShared(hostPermits, perHostLimit, topology.getHost(source), topology.getHost(destination), held);
+            sharedPermits.put(transfer, held);
+        }
+        if (source != null && perDeviceOutLimit > 0) {
+            outgoing.computeIfAbsent(source, d -> new Semaphore(perDeviceOutLimit, true)).acquire();
+        }
+        if (destination != null && perDeviceInLimit > 0) {
+            incoming.computeIfAbsent(destination, d -> new Semaphore(perDeviceInLimit, true)).acquire();
+        }
+    }
+
+    void release(ComponentTransfer transfer) {
+        DeviceId source = transfer.getSourceDeviceId();
+        DeviceId destination = transfer.getDestinationDeviceId();
+
+        if (destination != null && perDeviceInLimit > 0) {
+            incoming.get(destination).release();
+        }
+        if (source != null && perDeviceOutLimit > 0) {
+            outgoing.get(source).release();
+        }
+        List<Semaphore> held = sharedPermits.remove(transfer);
+        if (held != null) {
+            for (int i = held.size() - 1; i >= 0; --i) {
+                held.get(i).release();
+            }
+        }
+        if (global != null) {
+            global.release();
+        }
+    }
+
+    private void acquireShared(Map<String, SharedPermits> permits, int limit, String first, String second,
+                               List<Semaphore> held) throws InterruptedException {
+        if (limit <= 0) {
+            return;
+        }
+        if (first == null || (second != null && first.compareTo(second) > 0)) {
+            String swap = first;
+            first = second;
+            second = swap;
+        }
+        if (first != null) {
+            held.add(acquireShared(permits, limit, first));
+        }
+        if (second != null && !second.equals(first)) {
+            held.add(acquireShared(permits, limit, second));
+        }
+    }
+
+    private Semaphore acquireShared(Map<String, SharedPermits> permits, int limit, String name)
+            throws InterruptedException {
+        SharedPermits semaphore = permits.get(name);
+        if (semaphore == null) {
+            synchronized (this) {// Created with the limit setTopology may have replaced meanwhile
+                int current = permits == hostPermits ? perHostLimit : perRackLimit;
+                semaphore = permits.computeIfAbsent(name, n -> new SharedPermits(current > 0 ? current : limit));
+            }
+        }
+        semaphore.acquire();
+        return semaphore;
+    }
+
+    // A limit of 0 keeps the permits as they are, they are not taken until a limit is set again
+    private static void resize(Map<String, SharedPermits> permits, int limit) {
+        if (limit > 0) {
+            for (SharedPermits semaphore : permits.values()) {
+                semaphore.resize(limit);
+            }
+        }
+    }
+
+    private void takeBandwidth(DeviceId device, double units) throws InterruptedException {
+        TokenBucket bucket = device == null ? null : bandwidth.get(device);
+        if (bucket != null) {
+            bucket.take(units);
+        }
+    }
+
+    private void refillBandwidth() {
+        for (TokenBucket bucket : bandwidth.values()) {
+            bucket.refill();
+        }
+    }
+
+    // Permits of a host or a rack whose limit can change while some of them are held
+    private static class SharedPermits extends Semaphore {
+        private static final long serialVersionUID = 1L;
+        private int limit;
+
+        public SharedPermits(int limit) {
+            super(limit, true);
+            this.limit = limit;
+        }
+
+        // May go negative, holders over the new limit finish and later transfers wait for them
+        void resize(int newLimit) {
+            if (newLimit > limit) {
+                release(newLimit - limit);
+            }
+            else if (newLimit < limit) {
+                reducePermits(limit - newLimit);
+            }
+            limit = newLimit;
+        }
+    }
+
+    // Units are handed out in the order they are asked for, a caller going into debt delays the ones after it
+    private static class TokenBucket {
+        private final double unitsPerRefill;
+        private final double burst;
+        private double taken;
+        private double refilled;
+        // Units handed out and let in since the start, refilled stays at most burst ahead of taken
+
+        public TokenBucket(double unitsPerRefill, double burst) {
+            this.unitsPerRefill = unitsPerRefill;
+            this.burst = burst;
+            taken = 0;
+            refilled = burst;
+        }
+
+        synchronized void take(double units) throws InterruptedException {
+            taken += units;
+            double until = taken;
+            while (refilled < until) {
+                wait();
+            }
+        }
+
+        synchronized void refill() {
+            if (refilled < taken + burst) {
+                refilled = Math.min(refilled + unitsPerRefill, taken + burst);
+                notifyAll();
+            }
+        }
+    }
+}
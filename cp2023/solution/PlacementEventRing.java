@@ -0,0 +1,137 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Preallocated ring of completed placement changes. Completing threads publish without locks,
+// every subscriber reads at its own pace and is told how many events it lost when lapped.
+public final class PlacementEventRing {
+    public enum Type {
+        ADDED,
+        MOVED,
+        REMOVED
+    }
+
+    public interface Handler {
+        void onEvent(long sequence, Type type, ComponentId component, DeviceId source, DeviceId destination);
+
+        void onOverflow(long lostEvents);
+    }
+
+    private static final long EMPTY = -1;
+    private static final long BUSY = -2;
+    private static final VarHandle SEQUENCE;
+
+    static {
+        try {
+            SEQUENCE = MethodHandles.lookup().findVarHandle(Slot.class, "sequence", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed;
+    // Next sequence number to hand out to a publisher
+
+    public PlacementEventRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("ring capacity has to be a power of two");
+        }
+        slots = new Slot[capacity];
+        for (int i = 0; i < capacity; ++i) {
+            slots[i] = new Slot();
+        }
+        mask = capacity - 1;
+        claimed = new AtomicLong();
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    // Reads start from the next published event
+    public Subscription subscribe() {
+        return new Subscription(claimed.get());
+    }
+
+    void publish(Type type, ComponentId component, DeviceId source, DeviceId destination) {
+        long sequence = claimed.getAndIncrement();
+        Slot slot = slots[(int) sequence & mask];
+
+        // Seqlock write, a concurrent publisher a whole lap ahead wins the slot
+        while (true) {
+            long current = (long) SEQUENCE.getVolatile(slot);
+            if (current > sequence) {
+                return;
+            }
+            if (current != BUSY && SEQUENCE.compareAndSet(slot, current, BUSY)) {
+                break;
+            }
+            Thread.onSpinWait();
+        }
+        slot.type = type;
+        slot.component = component;
+        slot.source = source;
+        slot.destination = destination;
+        SEQUENCE.setRelease(slot, sequence);
+    }
+
+    public final class Subscription {
+        private long cursor;
+        // Sequence of the next event to deliver, used by a single consumer thread
+
+        private Subscription(long cursor) {
+            this.cursor = cursor;
+        }
+
+        // Delivers up to maxEvents published events without blocking, returns how many were delivered
+        public int poll(Handler handler, int maxEvents) {
+            int delivered = 0;
+            while (delivered < maxEvents) {
+                Slot slot = slots[(int) cursor & mask];
+                long before = (long) SEQUENCE.getAcquire(slot);
+                if (before == cursor) {
+                    Type type = slot.type;
+                    ComponentId component = slot.component;
+                    DeviceId source = slot.source;
+                    DeviceId destination = slot.destination;
+                    VarHandle.loadLoadFence();
+                    if ((long) SEQUENCE.getVolatile(slot) == cursor) {
+                        handler.onEvent(cursor, type, component, source, destination);
+                        cursor++;
+                        delivered++;
+                        continue;
+                    }
+                }
+
+                long head = claimed.get();
+                if (head - cursor > slots.length) {
+                    long next = head - slots.length;
+                    handler.onOverflow(next - cursor);
+                    cursor = next;
+                    continue;
+                }
+                break;// Not published yet
+            }
+            return delivered;
+        }
+
+        public long getCursor() {
+            return cursor;
+        }
+    }
+
+    private static final class Slot {
+        private volatile long sequence = EMPTY;
+        private Type type;
+        private ComponentId component;
+        private DeviceId source;
+        private DeviceId destination;
+    }
+}
@@ -0,0 +1,213 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Background task evening out device utilization with ordinary moves issued through execute
+public class Rebalancer {
+    private final StorageSystemImp system;
+    private final TransferFactory transfers;
+    private final int maxConcurrentTransfers;
+    private final long periodMillis;
+    private final double tolerance;
+    // Minimal utilization difference worth a move
+    private final Semaphore transferPermits;
+    private final Set<ComponentId> inFlight;
+    // Components moved by the rebalancer right now
+    private final AtomicLong completedMoves;
+    private final AtomicLong failedMoves;
+    private final AtomicLong failedRounds;
+    private volatile RuntimeException lastRoundFailure;
+    private ScheduledExecutorService scheduler;
+    private volatile ExecutorService movers;
+    // Null once stopped, a round still running then gives its permit back
+
+    public Rebalancer(StorageSystemImp system, TransferFactory transfers,
+                      int maxConcurrentTransfers, long periodMillis, double tolerance) {
+        if (system == null || transfers == null) {
+            throw new IllegalArgumentException("One of given parameters is null");
+        }
+        if (maxConcurrentTransfers <= 0 || periodMillis <= 0 || tolerance < 0) {
+            throw new IllegalArgumentException("Invalid rebalancer limits");
+        }
+        this.system = system;
+        this.transfers = transfers;
+        this.maxConcurrentTransfers = maxConcurrentTransfers;
+        this.periodMillis = periodMillis;
+        this.tolerance = tolerance;
+        transferPermits = new Semaphore(maxConcurrentTransfers);
+        inFlight = ConcurrentHashMap.newKeySet();
+        completedMoves = new AtomicLong();
+        failedMoves = new AtomicLong();
+        failedRounds = new AtomicLong();
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            throw new IllegalStateException("rebalancer already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(DaemonThreads.named("rebalancer"));
+        movers = Executors.newFixedThreadPool(maxConcurrentTransfers, DaemonThreads.named("rebalancer-move"));
+        scheduler.scheduleWithFixedDelay(this::rebalanceSafely, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            movers.shutdown();
+            scheduler = null;
+            movers = null;
+        }
+    }
+
+    public long getCompletedMoves() {
+        return completedMoves.get();
+    }
+
+    public long getFailedMoves() {
+        return failedMoves.get();
+    }
+
+    // Rounds that threw, the next round runs as scheduled
+    public long getFailedRounds() {
+        return failedRounds.get();
+    }
+
+    // Null until a round fails
+    public RuntimeException getLastRoundFailure() {
+        return lastRoundFailure;
+    }
+
+    // An exception escaping a scheduled task cancels all its later runs
+    private void rebalanceSafely() {
+        try {
+            rebalanceOnce();
+        } catch (RuntimeException e) {
+            lastRoundFailure = e;
+            failedRounds.incrementAndGet();
+        }
+    }
+
+    // Plans moves from the most to the least loaded devices while permits last
+    void rebalanceOnce() {
+        List<DeviceLoad> snapshot = system.snapshotLoad();
+        snapshot.removeIf(load -> load.getTotalSlots() == 0);// Decommissioned, nothing to compare
+        Map<DeviceId, Integer> occupied = new HashMap<>();
+        Map<DeviceId, Deque<ComponentId>> candidates = new HashMap<>();
+        for (DeviceLoad load : snapshot) {
+            occupied.put(load.getDeviceId(), load.getOccupiedSlots());
+            Deque<ComponentId> idle = new ArrayDeque<>(load.getIdleComponents());
+            idle.removeIf(inFlight::contains);
+            candidates.put(load.getDeviceId(), idle);
+        }
+
+        while (transferPermits.tryAcquire()) {
+            boolean started = false;
+            try {
+                started = planMove(snapshot, occupied, candidates);
+            } finally {// The permit goes to the mover, if none was started the round is over
+                if (!started) {
+                    transferPermits.release();
+                }
+            }
+            if (!started) {
+                return;
+            }
+        }
+    }
+
+    // Starts a move from the most loaded device to the least loaded one, false if no move is worth it
+    // or the rebalancer was stopped meanwhile
+    private boolean planMove(List<DeviceLoad> snapshot, Map<DeviceId, Integer> occupied,
+                             Map<DeviceId, Deque<ComponentId>> candidates) {
+        DeviceLoad source = null;
+        DeviceLoad destination = null;
+        double sourcePressure = -1;
+        double destinationUtilization = Double.MAX_VALUE;
+
+        for (DeviceLoad load : snapshot) {
+            DeviceId device = load.getDeviceId();
+            double pressure = (double) (occupied.get(device) + load.getQueueLength()) / load.getTotalSlots();
+            if (!candidates.get(device).isEmpty() && pressure > sourcePressure) {
+                sourcePressure = pressure;
+                source = load;
+            }
+        }
+        for (DeviceLoad load : snapshot) {
+            DeviceId device = load.getDeviceId();
+            double utilization = (double) occupied.get(device) / load.getTotalSlots();
+            // Devices with a queue are busy with user traffic, do not compete for their slots
+            if (load.getQueueLength() == 0 && occupied.get(device) < load.getTotalSlots()
+                    && utilization < destinationUtilization) {
+                destinationUtilization = utilization;
+                destination = load;
+            }
+        }
+        Topology topology = system.getTopology();
+        if (topology != null && source != null && destination != null) {
+            // Any destination within the tolerance of the emptiest one will do, take the closest
+            DeviceId from = source.getDeviceId();
+            double sourceAfter = (double) (occupied.get(from) - 1) / source.getTotalSlots();
+            double bestCost = topology.cost(from, destination.getDeviceId());
+            for (DeviceLoad load : snapshot) {
+                DeviceId device = load.getDeviceId();
+                double utilization = (double) occupied.get(device) / load.getTotalSlots();
+                double utilizationAfter = (double) (occupied.get(device) + 1) / load.getTotalSlots();
+                double cost = topology.cost(from, device);
+                if (load != source && load.getQueueLength() == 0 && occupied.get(device) < load.getTotalSlots()
+                        && utilization <= destinationUtilization + tolerance
+                        && sourcePressure - utilization > tolerance && utilizationAfter <= sourceAfter + tolerance
+                        && cost < bestCost) {
+                    bestCost = cost;
+                    destination = load;
+                }
+            }
+            destinationUtilization = (double) occupied.get(destination.getDeviceId()) / destination.getTotalSlots();
+        }
+
+        if (source == null || destination == null || source == destination) {
+            return false;
+        }
+        DeviceId from = source.getDeviceId();
+        DeviceId to = destination.getDeviceId();
+        double after = (double) (occupied.get(from) - 1) / source.getTotalSlots();
+        double destinationAfter = (double) (occupied.get(to) + 1) / destination.getTotalSlots();
+        if (sourcePressure - destinationUtilization <= tolerance || destinationAfter > after + tolerance) {
+            return false;
+        }
+
+        ComponentId component = candidates.get(from).poll();
+        occupied.put(from, occupied.get(from) - 1);
+        occupied.put(to, occupied.get(to) + 1);
+        ExecutorService pool = movers;
+        if (pool == null) {
+            return false;
+        }
+        inFlight.add(component);
+        try {
+            pool.execute(() -> move(component, from, to));
+        } catch (RejectedExecutionException e) {// Shut down by stop after the read
+            inFlight.remove(component);
+            return false;
+        }
+        return true;
+    }
+
+    private void move(ComponentId component, DeviceId source, DeviceId destination) {
+        try {
+            system.execute(transfers.newTransfer(component, source, destination));
+            completedMoves.incrementAndGet();
+        } catch (TransferException e) {
+            // The user moved or removed the component in the meantime
+            failedMoves.incrementAndGet();
+        } finally {
+            inFlight.remove(component);
+            transferPermits.release();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Brings the live placement to a target one: removals first, then transfers into free slots,
+// and swaps that only work together run as rotations
+public class Reconciler {
+    private final StorageSystemImp system;
+    private final TransferFactory transfers;
+    private final int perDeviceLimit;
+    // Transfers touching a single device within one wave, cycles are exempt
+    private final long estimatedTransferMillis;
+    // Counted for transfers the duration model of the system has no samples for
+    private final ExecutorService workers;
+
+    public Reconciler(StorageSystemImp system, TransferFactory transfers, int perDeviceLimit, long estimatedTransferMillis) {
+        if (system == null || transfers == null) {
+            throw new IllegalArgumentException("One of given parameters is null");
+        }
+        if (perDeviceLimit <= 0 || estimatedTransferMillis < 0) {
+            throw new IllegalArgumentException("Invalid reconciler limits");
+        }
+        this.system = system;
+        this.transfers = transfers;
+        this.perDeviceLimit = perDeviceLimit;
+        this.estimatedTransferMillis = estimatedTransferMillis;
+        workers = Executors.newCachedThreadPool(DaemonThreads.named("reconciler"));
+    }
+
+    // Dry run against the current state, nothing is executed
+    public ReconciliationPlan plan(Map<ComponentId, DeviceId> target) {
+        if (target == null) {
+            throw new IllegalArgumentException("null target placement");
+        }
+        Map<ComponentId, DeviceId> live = system.snapshotPlacement();
+        Map<DeviceId, Integer> free = new HashMap<>();
+        for (DeviceLoad load : system.snapshotLoad()) {
+            free.put(load.getDeviceId(), load.getTotalSlots() - load.getOccupiedSlots());
+        }
+
+        List<ReconciliationPlan.Step> pending = new ArrayList<>();
+        Set<ComponentId> unschedulable = new HashSet<>();
+        for (Map.Entry<ComponentId, DeviceId> entry : live.entrySet()) {
+            if (!target.containsKey(entry.getKey())) {
+                pending.add(new ReconciliationPlan.Step(entry.getKey(), entry.getValue(), null, false));
+            }
+        }
+        for (Map.Entry<ComponentId, DeviceId> entry : target.entrySet()) {
+            DeviceId current = live.get(entry.getKey());
+            if (entry.getValue() == null || !free.containsKey(entry.getValue())) {
+                unschedulable.add(entry.getKey());
+            }
+            else if (!entry.getValue().equals(current)) {
+                pending.add(new ReconciliationPlan.Step(entry.getKey(), current, entry.getValue(), false));
+            }
+        }
+
+        List<List<ReconciliationPlan.Step>> waves = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            List<ReconciliationPlan.Step> wave = nextWave(pending, free);
+            if (wave.isEmpty()) {
+                wave = nextCycles(pending, free);
+            }
+            if (wave.isEmpty()) {
+                break;
+            }
+            waves.add(wave);
+        }
+        for (ReconciliationPlan.Step step : pending) {
+            unschedulable.add(step.getComponentId());
+        }
+
+        // Waves run one after another, each as long as its slowest unit
+        DurationModel model = system.getDurationModel();
+        long estimatedNanos = 0;
+        for (List<ReconciliationPlan.Step> wave : waves) {
+            long waveNanos = 0;
+            for (List<ReconciliationPlan.Step> unit : units(wave)) {
+                waveNanos = Math.max(waveNanos, estimateNanos(unit, model));
+            }
+            estimatedNanos += waveNanos;
+        }
+        return new ReconciliationPlan(waves, unschedulable, TimeUnit.NANOSECONDS.toMillis(estimatedNanos));
+    }
+
+    // Members of a rotation prepare together and each performs once the slot it takes is given up.
+    // A unit with a phase the model has no samples for counts estimatedTransferMillis.
+    private long estimateNanos(List<ReconciliationPlan.Step> unit, DurationModel model) {
+        double prepare = 0;
+        double perform = 0;
+        for (ReconciliationPlan.Step step : unit) {
+            double stepPrepare = model == null ? Double.NaN : meanNanos(model, step, DurationModel.Phase.PREPARE);
+            double stepPerform = model == null ? Double.NaN : meanNanos(model, step, DurationModel.Phase.PERFORM);
+            if (Double.isNaN(stepPrepare) || Double.isNaN(stepPerform)) {
+                return TimeUnit.MILLISECONDS.toNanos(estimatedTransferMillis);
+            }
+            prepare = Math.max(prepare, stepPrepare);
+            perform = Math.max(perform, stepPerform);
+        }
+        return (long) (prepare + perform);
+    }
+
+    // Prepare as seen leaving the source, perform as seen entering the destination, the other side if missing
+    private static double meanNanos(DurationModel model, ReconciliationPlan.Step step, DurationModel.Phase phase) {
+        DeviceId source = step.getSourceDeviceId();
+        DeviceId destination = step.getDestinationDeviceId();
+        boolean outbound = destination == null || (phase == DurationModel.Phase.PREPARE && source != null);
+        return outbound ? model.get(source, phase, DurationModel.Direction.OUT).getMeanNanos()
+                : model.get(destination, phase, DurationModel.Direction.IN).getMeanNanos();
+    }
+
+    // Runs the waves in order, returns the transfers that failed, for example because users moved the component
+    public List<TransferException> execute(ReconciliationPlan plan) {
+        List<TransferException> failures = Collections.synchronizedList(new ArrayList<>());
+        for (List<ReconciliationPlan.Step> wave : plan.getWaves()) {
+            List<Future<?>> running = new ArrayList<>(wave.size());
+            for (List<ReconciliationPlan.Step> unit : units(wave)) {
+                running.add(workers.submit(() -> {
+                    List<ComponentTransfer> moves = new ArrayList<>(unit.size());
+                    for (ReconciliationPlan.Step step : unit) {
+                        moves.add(transfers.newTransfer(
+                                step.getComponentId(), step.getSourceDeviceId(), step.getDestinationDeviceId()));
+                    }
+                    try {
+                        if (unit.get(0).isInCycle()) {// All or none start, so no member waits for a failed one
+                            system.rotate(moves);
+                        }
+                        else {
+                            system.execute(moves.get(0));
+                        }
+                    } catch (TransferException e) {
+                        failures.add(e);
+                    }
+                }));
+            }
+            for (Future<?> transfer : running) {
+                try {
+                    transfer.get();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException("panic: unexpected thread interruption");
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        }
+        return failures;
+    }
+
+    public List<TransferException> reconcile(Map<ComponentId, DeviceId> target) {
+        return execute(plan(target));
+    }
+
+    // Transfers already started still finish, plans executed afterwards are rejected
+    public void close() {
+        workers.shutdown();
+    }
+
+    // Steps run alone, cycle members together; nextCycles lists each cycle in order from its first source
+    private static List<List<ReconciliationPlan.Step>> units(List<ReconciliationPlan.Step> wave) {
+        List<List<ReconciliationPlan.Step>> units = new ArrayList<>();
+        List<ReconciliationPlan.Step> cycle = new ArrayList<>();
+        for (ReconciliationPlan.Step step : wave) {
+            if (!step.isInCycle()) {
+                units.add(List.of(step));
+                continue;
+            }
+            cycle.add(step);
+            if (step.getDestinationDeviceId().equals(cycle.get(0).getSourceDeviceId())) {
+                units.add(cycle);
+                cycle = new ArrayList<>();
+            }
+        }
+        return units;
+    }
+
+    // Removals and transfers into slots that are free at the start of the wave, sources free up after it
+    private List<ReconciliationPlan.Step> nextWave(List<ReconciliationPlan.Step> pending, Map<DeviceId, Integer> free) {
+        List<ReconciliationPlan.Step> wave = new ArrayList<>();
+        Map<DeviceId, Integer> used = new HashMap<>();
+        pending.sort(Comparator.comparing(step -> step.getDestinationDeviceId() != null));
+
+        for (Iterator<ReconciliationPlan.Step> it = pending.iterator(); it.hasNext();) {
+            ReconciliationPlan.Step step = it.next();
+            DeviceId source = step.getSourceDeviceId();
+            DeviceId destination = step.getDestinationDeviceId();
+            if ((source != null && used.getOrDefault(source, 0) >= perDeviceLimit)
+                    || (destination != null && (free.get(destination) <= 0
+                        || used.getOrDefault(destination, 0) >= perDeviceLimit))) {
+                continue;
+            }
+            if (source != null) {
+                used.merge(source, 1, Integer::sum);
+            }
+            if (destination != null) {
+                used.merge(destination, 1, Integer::sum);
+                free.merge(destination, -1, Integer::sum);
+            }
+            wave.add(step);
+            it.remove();
+        }
+        for (ReconciliationPlan.Step step : wave) {
+            if (step.getSourceDeviceId() != null) {
+                free.merge(step.getSourceDeviceId(), 1, Integer::sum);
+            }
+        }
+        return wave;
+    }
+
+    // Disjoint cycles of moves between full devices, each keeps the occupancy of its devices
+    private List<ReconciliationPlan.Step> nextCycles(List<ReconciliationPlan.Step> pending, Map<DeviceId, Integer> free) {
+        List<ReconciliationPlan.Step> wave = new ArrayList<>();
+        Set<DeviceId> usedDevices = new HashSet<>();
+        boolean found = true;
+        while (found) {
+            found = false;
+            Map<DeviceId, List<ReconciliationPlan.Step>> outgoing = new HashMap<>();
+            for (ReconciliationPlan.Step step : pending) {
+                if (step.getSourceDeviceId() != null && step.getDestinationDeviceId() != null
+                        && !usedDevices.contains(step.getSourceDeviceId())
+                        && !usedDevices.contains(step.getDestinationDeviceId())) {
+                    outgoing.computeIfAbsent(step.getSourceDeviceId(), d -> new ArrayList<>()).add(step);
+                }
+            }
+            for (DeviceId start : outgoing.keySet()) {
+                LinkedList<ReconciliationPlan.Step> cycle = new LinkedList<>();
+                if (findCycle(start, start, outgoing, cycle, new HashSet<>())) {
+                    for (ReconciliationPlan.Step step : cycle) {
+                        pending.remove(step);
+                        usedDevices.add(step.getSourceDeviceId());
+                        wave.add(new ReconciliationPlan.Step(step.getComponentId(), step.getSourceDeviceId(),
+                                step.getDestinationDeviceId(), true));
+                    }
+                    found = true;
+                    break;
+                }
+            }
+        }
+        return wave;
+    }
+
+    private boolean findCycle(DeviceId device, DeviceId start, Map<DeviceId, List<ReconciliationPlan.Step>> outgoing,
+                              LinkedList<ReconciliationPlan.Step> cycle, Set<DeviceId> visited) {
+        visited.add(device);
+        for (ReconciliationPlan.Step step : outgoing.getOrDefault(device, List.of())) {
+            cycle.add(step);
+            DeviceId next = step.getDestinationDeviceId();
+            if (next.equals(start) || (!visited.contains(next) && findCycle(next, start, outgoing, cycle, visited))) {
+                return true;
+            }
+            cycle.removeLast();
+        }
+        return false;
+    }
+}
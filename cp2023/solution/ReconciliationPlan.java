@@ -0,0 +1,74 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+
+import java.util.List;
+import java.util.Set;
+
+// Transfers bringing the live placement to a target, grouped into waves run one after another.
+// Steps only take slots free at the start of their wave or run as rotations, so a plan never queues.
+public final class ReconciliationPlan {
+    public static final class Step {
+        private final ComponentId component;
+        private final DeviceId source;
+        private final DeviceId destination;
+        private final boolean inCycle;
+        // Runs as one rotation with the rest of its cycle
+
+        Step(ComponentId component, DeviceId source, DeviceId destination, boolean inCycle) {
+            this.component = component;
+            this.source = source;
+            this.destination = destination;
+            this.inCycle = inCycle;
+        }
+
+        public ComponentId getComponentId() {
+            return component;
+        }
+
+        public DeviceId getSourceDeviceId() {
+            return source;
+        }
+
+        public DeviceId getDestinationDeviceId() {
+            return destination;
+        }
+
+        public boolean isInCycle() {
+            return inCycle;
+        }
+    }
+
+    private final List<List<Step>> waves;
+    private final Set<ComponentId> unschedulable;
+    // Components whose target does not fit the capacity of the devices
+    private final long estimatedMillis;
+
+    ReconciliationPlan(List<List<Step>> waves, Set<ComponentId> unschedulable, long estimatedMillis) {
+        this.waves = List.copyOf(waves);
+        this.unschedulable = Set.copyOf(unschedulable);
+        this.estimatedMillis = estimatedMillis;
+    }
+
+    public List<List<Step>> getWaves() {
+        return waves;
+    }
+
+    public int getTransferCount() {
+        int count = 0;
+        for (List<Step> wave : waves) {
+            count += wave.size();
+        }
+        return count;
+    }
+
+    public Set<ComponentId> getUnschedulable() {
+        return unschedulable;
+    }
+
+    // Waves one after another, each as long as its slowest transfer or rotation by the duration model of the system
+    public long getEstimatedMillis() {
+        return estimatedMillis;
+    }
+}
@@ -0,0 +1,204 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.ReroutableTransfer;
+import cp2023.base.StorageSystem;
+import cp2023.exceptions.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.*;
+
+// Components with replicas on distinct devices. Every replica is an ordinary component of the underlying
+// system with an id of its own, so replica transfers get the same slot and cycle handling as any other.
+// Transfers of a component work on one replica: an addition adds a replica on the destination,
+// a removal drops the replica from the source and a move moves that replica. The data of a replica is
+// copied by the transfer that adds it, so the layer only limits how many replicas a component has.
+// A rerouted transfer may only go to devices without a replica of its component.
+public class ReplicatedStorageSystem implements StorageSystem {
+    private final StorageSystemImp system;
+    private final int maxReplicas;
+    private final Map<ComponentId, Map<DeviceId, Replica>> replicas;
+    // Guarded by itself, replicas being added or moved in already hold their destination
+    private int nextReplicaId;
+    // Replicas use negative ids, components of the underlying system have to stay non-negative
+
+    // Components already in the system become their own single replica and may get up to maxReplicas,
+    // so the system needs at least that many devices
+    public ReplicatedStorageSystem(StorageSystemImp system, int maxReplicas) {
+        if (system == null) {
+            throw new IllegalArgumentException("null storage system");
+        }
+        int devices = 0;
+        for (DeviceLoad load : system.snapshotLoad()) {
+            if (load.getTotalSlots() > 0) {
+                devices++;
+            }
+        }
+        if (maxReplicas <= 0 || maxReplicas > devices) {
+            throw new IllegalArgumentException("cannot keep " + maxReplicas + " replicas on " + devices + " devices");
+        }
+        this.system = system;
+        this.maxReplicas = maxReplicas;
+        replicas = new HashMap<>();
+        nextReplicaId = Integer.MIN_VALUE;
+        for (Map.Entry<ComponentId, DeviceId> entry : system.snapshotPlacement().entrySet()) {
+            if (entry.getKey().getId() < 0) {
+                throw new IllegalArgumentException("component " + entry.getKey() + " has a negative id");
+            }
+            Replica replica = new Replica(entry.getKey());
+            replica.ready = true;
+            replicas.computeIfAbsent(entry.getKey(), c -> new HashMap<>()).put(entry.getValue(), replica);
+        }
+    }
+
+    @Override
+    public void execute(ComponentTransfer transfer) throws TransferException {
+        if (transfer == null) {
+            return;
+        }
+        ComponentId component = transfer.getComponentId();
+        DeviceId sourceDevice = transfer.getSourceDeviceId();
+        DeviceId destDevice = transfer.getDestinationDeviceId();
+        if (component != null && component.getId() < 0) {
+            throw new IllegalArgumentException("component " + component + " has a negative id");
+        }
+        Replica moved;
+        Replica target;
+        List<DeviceId> claimed = new ArrayList<>();
+
+        synchronized (replicas) {
+            Map<DeviceId, Replica> placed = replicas.getOrDefault(component, Map.of());
+            moved = sourceDevice == null ? null : placed.get(sourceDevice);
+            if (sourceDevice == null && destDevice == null) {
+                throw new IllegalTransferType(component);
+            }
+            if (sourceDevice != null && (moved == null || !moved.ready)) {
+                throw new ComponentDoesNotExist(component, sourceDevice);
+            }
+            if (moved != null && moved.busy) {
+                throw new ComponentIsBeingOperatedOn(component);
+            }
+            if (destDevice != null && destDevice.equals(sourceDevice)) {
+                throw new ComponentDoesNotNeedTransfer(component, destDevice);
+            }
+            if (destDevice != null && placed.containsKey(destDevice)) {
+                throw new ComponentAlreadyExists(component, destDevice);
+            }
+            if (sourceDevice == null && new HashSet<>(placed.values()).size() >= maxReplicas) {
+                throw new ComponentAlreadyExists(component, placed.keySet().iterator().next());
+            }
+
+            if (moved != null) {
+                moved.busy = true;
+            }
+            target = null;
+            if (destDevice != null) {
+                // Every device the transfer may end up on is held, so no other replica is added there meanwhile
+                claimed.add(destDevice);
+                if (transfer instanceof ReroutableTransfer) {
+                    for (DeviceId alternative : ((ReroutableTransfer) transfer).getAlternativeDestinationIds()) {
+                        if (alternative != null && !alternative.equals(sourceDevice)
+                                && !claimed.contains(alternative) && !placed.containsKey(alternative)) {
+                            claimed.add(alternative);
+                        }
+                    }
+                }
+                target = new Replica(moved == null ? new ComponentId(nextReplicaId++) : moved.id);
+                Map<DeviceId, Replica> held = replicas.computeIfAbsent(component, c -> new HashMap<>());
+                for (DeviceId device : claimed) {
+                    held.put(device, target);
+                }
+            }
+        }
+
+        boolean done = false;
+        try {
+            ReplicaTransfer replica = new ReplicaTransfer(transfer, moved == null ? target.id : moved.id,
+                    claimed.isEmpty() ? claimed : claimed.subList(1, claimed.size()));
+            system.execute(TransferProxies.proxy(transfer, replica));
+            done = true;
+        } finally {
+            synchronized (replicas) {
+                Map<DeviceId, Replica> placed = replicas.get(component);
+                if (done && sourceDevice != null) {
+                    placed.remove(sourceDevice);
+                }
+                if (moved != null) {
+                    moved.busy = false;
+                }
+                if (target != null) {
+                    DeviceId reached = done ? transfer.getDestinationDeviceId() : null;
+                    for (DeviceId device : claimed) {
+                        if (!device.equals(reached)) {
+                            placed.remove(device);
+                        }
+                    }
+                    if (done) {
+                        target.ready = true;
+                    }
+                }
+                if (placed.isEmpty()) {
+                    replicas.remove(component);
+                }
+            }
+        }
+    }
+
+    public int getMaxReplicas() {
+        return maxReplicas;
+    }
+
+    // Devices with a complete replica, readers may use any of them
+    public List<DeviceId> locate(ComponentId component) {
+        List<DeviceId> devices = new ArrayList<>();
+        synchronized (replicas) {
+            Map<DeviceId, Replica> placed = replicas.get(component);
+            if (placed != null) {
+                for (Map.Entry<DeviceId, Replica> entry : placed.entrySet()) {
+                    if (entry.getValue().ready) {
+                        devices.add(entry.getKey());
+                    }
+                }
+            }
+        }
+        return devices;
+    }
+
+    private static class Replica {
+        private final ComponentId id;// Component of the underlying system
+        private boolean ready;// Stored completely, not only being added or moved in
+        private boolean busy;// Being moved or dropped
+
+        public Replica(ComponentId id) {
+            this.id = id;
+        }
+    }
+
+    // The transfer as seen by the underlying system: the replica instead of the component,
+    // and only the alternatives held for it
+    private static class ReplicaTransfer implements InvocationHandler {
+        private final ComponentTransfer transfer;
+        private final ComponentId replica;
+        private final List<DeviceId> alternatives;
+
+        public ReplicaTransfer(ComponentTransfer transfer, ComponentId replica, List<DeviceId> alternatives) {
+            this.transfer = transfer;
+            this.replica = replica;
+            this.alternatives = List.copyOf(alternatives);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getParameterCount() == 0 && method.getName().equals("getComponentId")) {
+                return replica;
+            }
+            if (method.getParameterCount() == 0 && method.getName().equals("getAlternativeDestinationIds")) {
+                return alternatives;
+            }
+            return TransferProxies.forward(transfer, method, args);
+        }
+    }
+}
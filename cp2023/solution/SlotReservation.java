@@ -0,0 +1,41 @@
+package cp2023.solution;
+
+import cp2023.base.DeviceId;
+
+import java.util.concurrent.ScheduledFuture;
+
+// Slots set aside on a device, consumed by transfers executed with this token
+public final class SlotReservation {
+    private final StorageSystemImp system;
+    private final DeviceId device;
+    private volatile int remainingSlots;
+    // Changed only under the mutex of the system
+    ScheduledFuture<?> expiry;
+
+    SlotReservation(StorageSystemImp system, DeviceId device, int slots) {
+        this.system = system;
+        this.device = device;
+        this.remainingSlots = slots;
+    }
+
+    public DeviceId getDeviceId() {
+        return device;
+    }
+
+    public int getRemainingSlots() {
+        return remainingSlots;
+    }
+
+    // Returns unused slots to the device before the lease runs out
+    public void release() {
+        system.releaseReservation(this);
+    }
+
+    StorageSystemImp getSystem() {
+        return system;
+    }
+
+    void setRemainingSlots(int slots) {
+        remainingSlots = slots;
+    }
+}
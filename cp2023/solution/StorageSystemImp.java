@@ -3,24 +3,86 @@ package cp2023.solution;
 import cp2023.base.ComponentId;
 import cp2023.base.ComponentTransfer;
 import cp2023.base.DeviceId;
+import cp2023.base.MultiDestinationTransfer;
+import cp2023.base.ReroutableTransfer;
+import cp2023.base.SpeculativelyPreparable;
 import cp2023.base.StorageSystem;
 import cp2023.exceptions.*;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 public class StorageSystemImp implements StorageSystem {
     private final Map<DeviceId, Integer> deviceTotalSlots;
     // Max capacity of devices
     private final Map<DeviceId, LinkedList<WaitForSlot>> queueToDevices;
     // Queue do devices
+    private final Map<DeviceId, LinkedList<WaitForGroup>> groupQueues;
+    // Groups waiting for slots on their device, in arrival order
     private final Map<DeviceId, Map<ComponentId, SlotStatus>> deviceSlots;
     // Taken slots in devices, free slots are not in this map
+    private final Map<DeviceId, Set<SlotStatus>> changingSlots;
+    // Slots being freed or handed over, possibly stale until the next wait graph snapshot
     private final Map<ComponentId, DeviceId> componentPlacement;
     // Where components are located on
+    private final Map<DeviceId, Set<ComponentId>> deviceComponents;
+    // Components located on each device; both are written in the critical section and scanned without it
     private final Set<ComponentId> beingOperatedOn;
     // Set of components being operated on
+    private CompletableFuture<Void> nextRelease;
+    // Completed when a component stops being operated on or reserved slots are given back, null until asked for
+    private final Map<DeviceId, DeviceTier> deviceTiers;
+    // Devices without an entry are STANDARD
+    private final Map<DeviceId, CompletableFuture<Void>> decommissioned;
+    // Devices accepting no inbound transfers, completed and forgotten once empty
+    private int queuedTransfers;
+    private final Map<ComponentId, WaitForSlot> queuedByComponent;
+    // Transfers in all device queues
+    private final LinkedList<WaitForAdmission> admissionQueue;
+    // Transfers waiting for room in a device queue
+    private volatile AdmissionControl admissionControl;
+    private final Map<DeviceId, Integer> reservedSlots;
+    private final Set<SlotReservation> reservations;
+    // Unused reserved slots, counted as taken
+    private ScheduledExecutorService leaseTimer;
+    private ExecutorService rotationHelpers;
+    // Run the participants of a rotation or a group besides the calling thread
+    private volatile int spillSlots;
+    private volatile long spillStallNanos;
+    private ScheduledExecutorService spillTimer;
+    private ScheduledFuture<?> spillCheck;
+    private final LongAdder spilledGrants;
+    // Waiters let in over capacity after a long stall
     private final Semaphore mutex;
+    private final LongAdder mutexAcquisitions;
+    private final LongAdder contendedMutexAcquisitions;
+    // Lock statistics, handoffs of the critical section are not counted
+    private volatile PerformLimiter performLimiter;
+    // Optional limits on concurrent perform phases
+    private volatile Topology topology;
+    // Orders the destinations of multi-destination transfers by cost, cheapest first
+    private volatile DurationModel durationModel;
+    private volatile int grantWindow;
+    // Waiters considered when a slot is granted, more than 1 prefers the one whose own slot frees soonest
+    private volatile PlacementEventRing placementEvents;
+    private volatile MappedPlacementStore placementStore;
+    private volatile boolean placementStoreFull;
+    // Optional copy of componentPlacement readable by other processes
+    private volatile boolean combining;
+    private final ConcurrentLinkedQueue<Completion> pendingCompletions;
+    // Finished transfers whose bookkeeping is applied by the next holder of the mutex
 
     public StorageSystemImp (
             Map<DeviceId, Integer> deviceTotalSlots,
@@ -35,11 +97,25 @@ public class StorageSystemImp implements StorageSystem {
 
         Map<DeviceId, Integer> componentCounter = new HashMap<>();
         deviceSlots = new HashMap<>();
+        changingSlots = new HashMap<>();
         this.deviceTotalSlots = new HashMap<>();
-        this.componentPlacement = new HashMap<>();
+        this.componentPlacement = new ConcurrentHashMap<>();
+        deviceComponents = new ConcurrentHashMap<>();
         queueToDevices = new HashMap<>();
+        groupQueues = new HashMap<>();
         beingOperatedOn = new HashSet<>();
+        deviceTiers = new HashMap<>();
+        decommissioned = new HashMap<>();
+        queuedTransfers = 0;
+        queuedByComponent = new HashMap<>();
+        admissionQueue = new LinkedList<>();
+        reservedSlots = new HashMap<>();
+        reservations = new HashSet<>();
         mutex = new Semaphore(1, true);
+        mutexAcquisitions = new LongAdder();
+        contendedMutexAcquisitions = new LongAdder();
+        spilledGrants = new LongAdder();
+        pendingCompletions = new ConcurrentLinkedQueue<>();
         
         if (deviceTotalSlots.size() == 0) {
             throw new IllegalArgumentException("pusty system");
@@ -50,6 +126,8 @@ public class StorageSystemImp implements StorageSystem {
                 throw new IllegalArgumentException("null device");
             }
             deviceSlots.put(device, new HashMap<>());
+            changingSlots.put(device, Collections.newSetFromMap(new IdentityHashMap<>()));
+            deviceComponents.put(device, ConcurrentHashMap.newKeySet());
             componentCounter.put(device, 0);
 
             if (deviceTotalSlots.get(device) <= 0) {
@@ -57,6 +135,7 @@ public class StorageSystemImp implements StorageSystem {
             }
             this.deviceTotalSlots.put(device, deviceTotalSlots.get(device));
             queueToDevices.put(device, new LinkedList<>());
+            groupQueues.put(device, new LinkedList<>());
         }
 
         for (ComponentId component : allComponents) {
@@ -81,6 +160,7 @@ public class StorageSystemImp implements StorageSystem {
             deviceSlots.get(device).put(component, new SlotStatus(component));
 
             this.componentPlacement.put(component, componentPlacement.get(component));
+            deviceComponents.get(device).add(component);
         }
     }
 
@@ -92,26 +172,72 @@ public class StorageSystemImp implements StorageSystem {
                 DeviceId destDevice = transfer.getDestinationDeviceId();
                 ComponentId component = transfer.getComponentId();
 
-                mutex.acquire();
-                validateTransfer(transfer);
+                acquireMutex();
+                validateTransfer(transfer, false);
                 beingOperatedOn.add(component);
 
-                if (sourceDevice == null) {// add component
-                    if (!transferToFreeSpace(transfer)) {
-                        waitForSlot(transfer);
-                    }
-                } else if (destDevice == null) {// remove component
-                    prepareTransfer(transfer);
+                if (sourceDevice != null && destDevice == null) {// remove component
+                    prepareTransfer(transfer, null);
                     performTransfer(transfer, null);
-                } else {
-                    if (!transferToFreeSpace(transfer)) {// move component
-                        LinkedList<WaitForSlot> cycle = new LinkedList<>();
-                        if (findCycle(sourceDevice, destDevice, cycle, new HashSet<>())) {
-                            initiateCycle(cycle, transfer);
-                        } else {
-                            waitForSlot(transfer);
-                        }
-                    }
+                } else {// add or move component
+                    placeTransfer(transfer, null);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption");
+            }
+        }
+    }
+
+    // The transfer takes one of the reserved slots on its destination instead of queuing
+    public void execute(ComponentTransfer transfer, SlotReservation reservation) throws TransferException {
+        if (reservation == null) {
+            execute(transfer);
+            return;
+        }
+        if (transfer == null || reservation.getSystem() != this
+                || !reservation.getDeviceId().equals(transfer.getDestinationDeviceId())) {
+            throw new IllegalArgumentException("reservation does not cover the destination of the transfer");
+        }
+        try {
+            acquireMutex();
+            validateTransfer(transfer, false);
+            if (reservation.getRemainingSlots() == 0) {
+                releaseMutex();
+                throw new ReservationExpired(reservation.getDeviceId());
+            }
+            beingOperatedOn.add(transfer.getComponentId());
+            consumeReservation(reservation, 1);
+            transferToReservedSlot(transfer);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    // Like execute, but a transfer of the component that still waits in a device queue is withdrawn
+    // and fails with TransferSuperseded, so the component moves straight to the new destination.
+    // If admission control rejects the new transfer, the queued one keeps its place.
+    public void supersede(ComponentTransfer transfer) throws TransferException {
+        if (transfer != null) {
+            try {
+                DeviceId sourceDevice = transfer.getSourceDeviceId();
+                DeviceId destDevice = transfer.getDestinationDeviceId();
+                ComponentId component = transfer.getComponentId();
+
+                acquireMutex();
+                WaitForSlot queued = queuedByComponent.get(component);
+                validateTransfer(transfer, queued != null);
+                if (queued != null) {// Fails only once the new transfer is admitted
+                    queueToDevices.get(queued.destination).remove(queued);
+                    leftQueue(queued, queued.destination);
+                }
+                beingOperatedOn.add(component);
+
+                if (sourceDevice != null && destDevice == null) {// remove component
+                    failSuperseded(queued);
+                    prepareTransfer(transfer, null);
+                    performTransfer(transfer, null);
+                } else {// add or move component
+                    placeTransfer(transfer, queued);
                 }
             } catch (InterruptedException e) {
                 throw new RuntimeException("panic: unexpected thread interruption");
@@ -119,6 +245,442 @@ public class StorageSystemImp implements StorageSystem {
         }
     }
 
+    public void swap(ComponentTransfer first, ComponentTransfer second) throws TransferException {
+        rotate(List.of(first, second));
+    }
+
+    // Moves whose destinations are exactly the sources of the others. All slots are handed over in one step,
+    // so none of the transfers enters a device queue; they run in parallel and execute returns when all are done.
+    public void rotate(List<? extends ComponentTransfer> transfers) throws TransferException {
+        checkRotation(transfers);
+        try {
+            acquireMutex();
+            validateAll(transfers);
+
+            // Every transfer takes the slot of some transfer leaving its destination
+            Map<DeviceId, Deque<ComponentTransfer>> leaving = new HashMap<>();
+            for (ComponentTransfer transfer : transfers) {
+                leaving.computeIfAbsent(transfer.getSourceDeviceId(), d -> new ArrayDeque<>()).add(transfer);
+            }
+            List<SlotStatus> incoming = new ArrayList<>(transfers.size());
+            for (ComponentTransfer transfer : transfers) {
+                ComponentTransfer left = leaving.get(transfer.getDestinationDeviceId()).remove();
+                SlotStatus slot = deviceSlots.get(left.getSourceDeviceId()).get(left.getComponentId());
+                slot.waiting = true;
+                slot.beingFree = false;
+                slot.reservedFor = transfer.getComponentId();
+                slot.reservedSince = System.nanoTime();
+                changingSlots.get(left.getSourceDeviceId()).add(slot);
+                incoming.add(slot);
+            }
+            if (rotationHelpers == null) {
+                rotationHelpers = Executors.newCachedThreadPool(DaemonThreads.named("rotation"));
+            }
+            ExecutorService helpers = rotationHelpers;
+            releaseMutex();
+
+            List<Future<?>> participants = new ArrayList<>(transfers.size() - 1);
+            for (int i = 1; i < transfers.size(); ++i) {
+                ComponentTransfer transfer = transfers.get(i);
+                SlotStatus slot = incoming.get(i);
+                participants.add(helpers.submit(() -> {
+                    runRotationParticipant(transfer, slot);
+                    return null;
+                }));
+            }
+            RuntimeException failed = null;
+            try {
+                runRotationParticipant(transfers.get(0), incoming.get(0));
+            } catch (RuntimeException e) {
+                failed = e;
+            }
+            // A failed participant still hands its slot over, the others finish before the call returns
+            for (Future<?> participant : participants) {
+                try {
+                    participant.get();
+                } catch (ExecutionException e) {
+                    if (failed == null) {
+                        failed = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                                : new RuntimeException(e.getCause());
+                    }
+                }
+            }
+            if (failed != null) {
+                throw failed;
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    // Moves components that have to stay together to one device. The group waits as one unit until slots for
+    // all of them are available at once and claims nothing before; then all run in parallel and the call returns
+    // when every one is done. A member swaps places with a transfer queued for its source that leaves the device.
+    public void executeGroup(List<? extends ComponentTransfer> transfers) throws TransferException {
+        checkGroup(transfers);
+        DeviceId destination = transfers.get(0).getDestinationDeviceId();
+        try {
+            acquireMutex();
+            validateAll(transfers);
+            if (transfers.size() > deviceTotalSlots.get(destination)) {// Would never fit
+                for (ComponentTransfer transfer : transfers) {
+                    endOperation(transfer.getComponentId());
+                }
+                releaseMutex();
+                throw new DeviceOverloaded(destination);
+            }
+            SlotReservation reservation = new SlotReservation(this, destination, 0);
+            WaitForGroup group = new WaitForGroup(transfers, reservation);
+            groupQueues.get(destination).add(group);
+            grantFreeSlots(destination);
+            if (rotationHelpers == null) {
+                rotationHelpers = Executors.newCachedThreadPool(DaemonThreads.named("rotation"));
+            }
+            ExecutorService helpers = rotationHelpers;
+            releaseMutex();
+
+            group.sem.acquire();
+            if (group.rejection != null) {
+                throw group.rejection;
+            }
+            List<Future<?>> members = new ArrayList<>(transfers.size() - 1);
+            for (int i = 1; i < transfers.size(); ++i) {
+                ComponentTransfer transfer = transfers.get(i);
+                members.add(helpers.submit(() -> {
+                    runGroupMember(transfer, group);
+                    return null;
+                }));
+            }
+            Throwable failure = null;
+            try {
+                runGroupMember(transfers.get(0), group);
+            } catch (TransferException | RuntimeException e) {
+                failure = e;
+            }
+            for (Future<?> member : members) {// The others still finish when one fails
+                try {
+                    member.get();
+                } catch (ExecutionException e) {
+                    failure = failure == null ? e.getCause() : failure;
+                }
+            }
+            if (failure instanceof TransferException) {
+                throw (TransferException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    private void checkGroup(List<? extends ComponentTransfer> transfers) {
+        if (transfers == null || transfers.isEmpty()) {
+            throw new IllegalArgumentException("a group needs at least one transfer");
+        }
+        Set<ComponentId> components = new HashSet<>();
+        DeviceId destination = transfers.get(0) == null ? null : transfers.get(0).getDestinationDeviceId();
+        for (ComponentTransfer transfer : transfers) {
+            if (transfer == null || destination == null || !destination.equals(transfer.getDestinationDeviceId())) {
+                throw new IllegalArgumentException("members of a group go to the same device");
+            }
+            if (!components.add(transfer.getComponentId())) {
+                throw new IllegalArgumentException("component " + transfer.getComponentId() + " twice in a group");
+            }
+        }
+    }
+
+    // Marks all transfers as operated on, or none of them if one is invalid
+    private void validateAll(List<? extends ComponentTransfer> transfers) throws TransferException, InterruptedException {
+        List<ComponentTransfer> validated = new ArrayList<>(transfers.size());
+        for (ComponentTransfer transfer : transfers) {
+            try {
+                validateTransfer(transfer, false);
+            } catch (TransferException e) {
+                acquireMutex();
+                for (ComponentTransfer earlier : validated) {
+                    endOperation(earlier.getComponentId());
+                }
+                releaseMutex();
+                throw e;
+            }
+            beingOperatedOn.add(transfer.getComponentId());
+            validated.add(transfer);
+        }
+    }
+
+    private void runGroupMember(ComponentTransfer transfer, WaitForGroup group)
+            throws InterruptedException, TransferException {
+        SlotReservation reservation = group.reservation;
+        acquireMutex();
+        SlotStatus swapped = group.swaps.get(transfer.getComponentId());
+        if (swapped != null) {// Performs once the transfer leaving this slot has prepared
+            prepareTransfer(transfer, swapped);
+            swapped.sem.acquire();
+            performTransfer(transfer, swapped);
+            return;
+        }
+        if (reservation.getRemainingSlots() == 0) {// Dropped by decommissioning the device
+            rejectTransfer(transfer, new DeviceDecommissioned(reservation.getDeviceId()));
+        }
+        consumeReservation(reservation, 1);
+        transferToReservedSlot(transfer);
+    }
+
+    // A transfer holding a reservation never queues or reroutes. On a device shrunk meanwhile the slot is
+    // still given, the device is over capacity until enough components leave, as with any shrinking.
+    private void transferToReservedSlot(ComponentTransfer transfer) throws InterruptedException {
+        SlotStatus slot = new SlotStatus(transfer.getComponentId());
+        deviceSlots.get(transfer.getDestinationDeviceId()).put(transfer.getComponentId(), slot);
+        prepareTransfer(transfer, slot);
+        performTransfer(transfer, slot);
+    }
+
+    private void checkRotation(List<? extends ComponentTransfer> transfers) {
+        if (transfers == null || transfers.size() < 2) {
+            throw new IllegalArgumentException("a rotation needs at least two transfers");
+        }
+        Set<ComponentId> components = new HashSet<>();
+        Map<DeviceId, Integer> balance = new HashMap<>();
+        for (ComponentTransfer transfer : transfers) {
+            if (transfer == null || transfer.getSourceDeviceId() == null || transfer.getDestinationDeviceId() == null) {
+                throw new IllegalArgumentException("a rotation consists of moves only");
+            }
+            if (!components.add(transfer.getComponentId())) {
+                throw new IllegalArgumentException("component " + transfer.getComponentId() + " moved twice in a rotation");
+            }
+            balance.merge(transfer.getSourceDeviceId(), 1, Integer::sum);
+            balance.merge(transfer.getDestinationDeviceId(), -1, Integer::sum);
+        }
+        for (int difference : balance.values()) {
+            if (difference != 0) {
+                throw new IllegalArgumentException("transfers do not form a rotation");
+            }
+        }
+    }
+
+    private void runRotationParticipant(ComponentTransfer transfer, SlotStatus slot) throws InterruptedException {
+        acquireMutex();
+        prepareTransfer(transfer, slot);
+        slot.sem.acquire();
+        performTransfer(transfer, slot);
+    }
+
+    // The superseded transfer, withdrawn from the queues, fails once this one is admitted and is put back otherwise
+    private void placeTransfer(ComponentTransfer transfer, WaitForSlot superseded)
+            throws InterruptedException, TransferException {
+        DeviceId sourceDevice = transfer.getSourceDeviceId();
+        Set<DeviceId> triedDestinations = new HashSet<>();
+
+        while (true) {
+            List<DeviceId> candidates = candidateDestinations(transfer);
+            if (triedDestinations.isEmpty() && !candidates.get(0).equals(transfer.getDestinationDeviceId())) {
+                ((ReroutableTransfer) transfer).reroute(candidates.get(0));
+            }
+            DeviceId destDevice = transfer.getDestinationDeviceId();
+            if (hasRoom(destDevice)) {// Exactly when transferToFreeSpace finds a slot
+                failSuperseded(superseded);
+                transferToFreeSpace(transfer);
+                return;
+            }
+            for (DeviceId candidate : candidates) {
+                if (hasRoom(candidate)) {
+                    failSuperseded(superseded);
+                    ((ReroutableTransfer) transfer).reroute(candidate);
+                    transferToFreeSpace(transfer);
+                    return;
+                }
+            }
+            if (sourceDevice != null) {
+                for (DeviceId candidate : candidates) {
+                    LinkedList<WaitForSlot> cycle = new LinkedList<>();
+                    if (findCycle(sourceDevice, candidate, cycle, new HashSet<>())) {
+                        failSuperseded(superseded);
+                        withdrawCycle(cycle, sourceDevice);
+                        if (!candidate.equals(destDevice)) {
+                            ((ReroutableTransfer) transfer).reroute(candidate);
+                        }
+                        initiateCycle(cycle, transfer);
+                        return;
+                    }
+                }
+            }
+
+            // A move out of a device with waiters frees a slot someone needs, holding it back could deadlock
+            AdmissionControl control = admissionControl;
+            if (control == null || control.admits(queueToDevices.get(destDevice).size(), queuedTransfers)
+                    || (sourceDevice != null && !queueToDevices.get(sourceDevice).isEmpty())) {
+                failSuperseded(superseded);
+                waitForSlot(transfer, candidates);
+                return;
+            }
+
+            triedDestinations.add(destDevice);
+            switch (control.getPolicy()) {
+                case WAIT:
+                    failSuperseded(superseded);
+                    superseded = null;
+                    waitForAdmission(transfer);
+                    break;
+                case TRY_ALTERNATIVE:
+                    if (!rerouteTransfer(transfer, control, triedDestinations)) {
+                        rejectOverloaded(transfer, destDevice, superseded);
+                    }
+                    break;
+                default:
+                    rejectOverloaded(transfer, destDevice, superseded);
+            }
+        }
+    }
+
+    private void failSuperseded(WaitForSlot superseded) {
+        if (superseded != null) {
+            superseded.rejection = new TransferSuperseded(superseded.component);
+            superseded.sem.release();
+        }
+    }
+
+    // The mutex was held since the superseded transfer was withdrawn, so it still operates on the component
+    private void rejectOverloaded(ComponentTransfer transfer, DeviceId destDevice, WaitForSlot superseded)
+            throws TransferException {
+        if (superseded == null) {
+            rejectTransfer(transfer, new DeviceOverloaded(destDevice));
+        }
+        else {
+            restoreQueued(superseded);
+            releaseMutex();
+            throw new DeviceOverloaded(destDevice);
+        }
+    }
+
+    // Device queues are in arrival order, only waitForSlot appends to them
+    private void restoreQueued(WaitForSlot waiting) {
+        for (DeviceId candidate : waiting.candidates) {
+            ListIterator<WaitForSlot> it = queueToDevices.get(candidate).listIterator();
+            while (it.hasNext()) {
+                if (it.next().since > waiting.since) {
+                    it.previous();
+                    break;
+                }
+            }
+            it.add(waiting);
+        }
+        queuedTransfers++;
+        queuedByComponent.put(waiting.component, waiting);
+    }
+
+    // Blocks until the destination queue may have room, afterwards the mutex is held again
+    private void waitForAdmission(ComponentTransfer transfer) throws InterruptedException, TransferException {
+        DeviceId destDevice = transfer.getDestinationDeviceId();
+        WaitForAdmission waiting = new WaitForAdmission(destDevice);
+        admissionQueue.add(waiting);
+        releaseMutex();
+
+        waiting.sem.acquire();
+        acquireMutex();
+        if (!deviceTotalSlots.containsKey(destDevice)) {
+            rejectTransfer(transfer, new DeviceDoesNotExist(destDevice));
+        }
+        if (decommissioned.containsKey(destDevice)) {
+            rejectTransfer(transfer, new DeviceDecommissioned(destDevice));
+        }
+    }
+
+    private boolean rerouteTransfer(ComponentTransfer transfer, AdmissionControl control, Set<DeviceId> tried) {
+        if (!(transfer instanceof ReroutableTransfer)) {
+            return false;
+        }
+        ReroutableTransfer reroutable = (ReroutableTransfer) transfer;
+        for (DeviceId alternative : reroutable.getAlternativeDestinationIds()) {
+            if (alternative == null || tried.contains(alternative) || alternative.equals(transfer.getSourceDeviceId())
+                    || !deviceTotalSlots.containsKey(alternative) || decommissioned.containsKey(alternative)) {
+                continue;
+            }
+            if (freeSlots(alternative) > 0
+                    || control.admits(queueToDevices.get(alternative).size(), queuedTransfers)) {
+                reroutable.reroute(alternative);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rejectTransfer(ComponentTransfer transfer, TransferException reason) throws TransferException {
+        endOperation(transfer.getComponentId());
+        releaseMutex();
+        throw reason;
+    }
+
+    // Destination first, then the usable alternatives of a multi-destination transfer; with a topology,
+    // cheapest first and the transfer is rerouted to the head before the first attempt
+    private List<DeviceId> candidateDestinations(ComponentTransfer transfer) {
+        DeviceId destDevice = transfer.getDestinationDeviceId();
+        List<DeviceId> candidates = new ArrayList<>();
+        candidates.add(destDevice);
+        if (transfer instanceof MultiDestinationTransfer) {
+            for (DeviceId alternative : ((MultiDestinationTransfer) transfer).getAlternativeDestinationIds()) {
+                if (alternative != null && !candidates.contains(alternative)
+                        && !alternative.equals(transfer.getSourceDeviceId())
+                        && deviceTotalSlots.containsKey(alternative) && !decommissioned.containsKey(alternative)) {
+                    candidates.add(alternative);
+                }
+            }
+            Topology costs = topology;
+            if (costs != null) {// Stable, the requested destination stays first among the cheapest
+                DeviceId sourceDevice = transfer.getSourceDeviceId();
+                candidates.sort(Comparator.comparingDouble(candidate -> costs.cost(sourceDevice, candidate)));
+            }
+        }
+        return candidates;
+    }
+
+    // Slots on a device with a waiting group are kept for the group
+    private boolean hasRoom(DeviceId device) {
+        if (!groupQueues.get(device).isEmpty()) {
+            return false;
+        }
+        if (freeSlots(device) > 0) {
+            return true;
+        }
+        for (SlotStatus slot : deviceSlots.get(device).values()) {
+            if (slot.beingFree) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Bookkeeping after a transfer left the queue of the device it goes to, caller holds the mutex.
+    // The transfer is withdrawn from the queues of its other candidate devices.
+    private void leftQueue(WaitForSlot left, DeviceId device) {
+        for (DeviceId candidate : left.candidates) {
+            if (!candidate.equals(device)) {
+                queueToDevices.get(candidate).remove(left);
+            }
+        }
+        left.destination = device;
+        queuedTransfers--;
+        queuedByComponent.remove(left.component);
+        wakeAdmitted();
+    }
+
+    // Every transfer waiting for admission that may fit now is woken, those that lose the race wait again
+    private void wakeAdmitted() {
+        AdmissionControl control = admissionControl;
+        for (Iterator<WaitForAdmission> it = admissionQueue.iterator(); it.hasNext();) {
+            WaitForAdmission waiting = it.next();
+            LinkedList<WaitForSlot> queue = queueToDevices.get(waiting.device);
+            if (control == null || queue == null || control.admits(queue.size(), queuedTransfers)) {
+                it.remove();
+                waiting.sem.release();
+            }
+        }
+    }
+
     private boolean transferToFreeSpace (ComponentTransfer transfer) throws InterruptedException {
         DeviceId destDevice = transfer.getDestinationDeviceId();
         ComponentId component = transfer.getComponentId();
@@ -126,10 +688,10 @@ public class StorageSystemImp implements StorageSystem {
         boolean gotASlot = false;
 
         // If there is a free slot
-        if (destinationSlots.size() < deviceTotalSlots.get(destDevice)) {
+        if (freeSlots(destDevice) > 0) {
             SlotStatus thisSlot = new SlotStatus(component);
             destinationSlots.put(component, thisSlot);
-            prepareTransfer(transfer);
+            prepareTransfer(transfer, thisSlot);
             performTransfer(transfer, thisSlot);
             gotASlot = true;
         }
@@ -139,9 +701,12 @@ public class StorageSystemImp implements StorageSystem {
                 if (currentSlot.beingFree) {
                     currentSlot.beingFree = false;
                     currentSlot.waiting = true;
+                    currentSlot.reservedFor = component;
+                    currentSlot.reservedSince = System.nanoTime();
+                    changingSlots.get(destDevice).add(currentSlot);
                     gotASlot = true;
 
-                    prepareTransfer(transfer);
+                    prepareTransfer(transfer, currentSlot);
                     currentSlot.sem.acquire();
                     performTransfer(transfer, currentSlot);
 
@@ -163,12 +728,10 @@ public class StorageSystemImp implements StorageSystem {
                 DeviceId sourceDevice = currentTransferInQueue.source;
 
                 if (sourceDevice.equals(finalDestination)) {
-                    it.remove();// remove this transfer from queue
                     return true;
                 }
                 else {
                     if (!visitedDevices.contains(sourceDevice) && findCycle(sourceDevice, finalDestination, cycle, visitedDevices)) {
-                        it.remove();// remove this transfer from queue
                         return true;
                     }
                     else {
@@ -181,6 +744,17 @@ public class StorageSystemImp implements StorageSystem {
         return false;
     }
 
+    // Takes the members of a found cycle out of the queues only after the search, leftQueue also edits
+    // the queues of other candidate devices that the search may still be iterating over
+    private void withdrawCycle(LinkedList<WaitForSlot> cycle, DeviceId closingSource) {
+        DeviceId device = closingSource;
+        for (WaitForSlot waiting : cycle) {
+            queueToDevices.get(device).remove(waiting);
+            leftQueue(waiting, device);
+            device = waiting.source;
+        }
+    }
+
     void initiateCycle(LinkedList<WaitForSlot> cycle, ComponentTransfer closingTransfer) throws InterruptedException {
         DeviceId currentDevice = closingTransfer.getSourceDeviceId();
         ComponentId currentComp = closingTransfer.getComponentId();
@@ -190,6 +764,9 @@ public class StorageSystemImp implements StorageSystem {
             currentTransferInCycle.slot = deviceSlots.get(currentDevice).get(currentComp);
             currentTransferInCycle.slot.waiting = true;
             currentTransferInCycle.slot.beingFree = false;
+            currentTransferInCycle.slot.reservedFor = currentTransferInCycle.component;
+            currentTransferInCycle.slot.reservedSince = System.nanoTime();
+            changingSlots.get(currentDevice).add(currentTransferInCycle.slot);
             currentDevice = currentTransferInCycle.source;
             currentComp = currentTransferInCycle.component;
         }
@@ -199,70 +776,242 @@ public class StorageSystemImp implements StorageSystem {
         SlotStatus mySlot = deviceSlots.get(lastTransfer.source).get(lastTransfer.component);
         mySlot.waiting = true;
         mySlot.beingFree = false;
+        mySlot.reservedFor = closingTransfer.getComponentId();
+        mySlot.reservedSince = System.nanoTime();
+        changingSlots.get(lastTransfer.source).add(mySlot);
 
         for (WaitForSlot transferInCycle : cycle) {
             transferInCycle.sem.release();
         }
 
-        mutex.release();
-
-        prepareTransfer(closingTransfer);
+        prepareTransfer(closingTransfer, mySlot);
         mySlot.sem.acquire();
         performTransfer(closingTransfer, mySlot);
     }
 
-    void waitForSlot (ComponentTransfer transfer) throws InterruptedException {
+    void waitForSlot (ComponentTransfer transfer, List<DeviceId> candidates) throws InterruptedException, TransferException {
         DeviceId sourceDevice = transfer.getSourceDeviceId();
         DeviceId destDevice = transfer.getDestinationDeviceId();
         ComponentId component = transfer.getComponentId();
 
-        WaitForSlot waiting = new WaitForSlot(sourceDevice, component);
-        Queue<WaitForSlot> queue = queueToDevices.get(destDevice);
-        queue.add(waiting);
-        mutex.release();
+        WaitForSlot waiting = new WaitForSlot(sourceDevice, destDevice, component, candidates);
+        // The destination of a multi-destination transfer is known only after the grant
+        waiting.speculative = transfer instanceof SpeculativelyPreparable && candidates.size() == 1;
+        for (DeviceId candidate : candidates) {
+            queueToDevices.get(candidate).add(waiting);
+        }
+        queuedTransfers++;
+        queuedByComponent.put(component, waiting);
+        if (sourceDevice != null && !groupQueues.get(sourceDevice).isEmpty()) {
+            grantFreeSlots(sourceDevice);// May swap places with a member of a group waiting for the source
+        }
+        releaseMutex();
 
-        waiting.sem.acquire();
-        prepareTransfer(transfer);
+        if (waiting.speculative) {
+            // Preparing while queued, the source slot is still given up only after the grant
+            RuntimeException failure = null;
+            try {
+                long started = System.nanoTime();
+                transfer.prepare();
+                recordDuration(transfer, DurationModel.Phase.PREPARE, started);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            awaitGrant(waiting);
+            if (failure != null) {
+                // The source slot was not given up yet, unless a cycle or a group swap promised it meanwhile
+                SlotStatus sourceSlot = sourceDevice == null ? null : deviceSlots.get(sourceDevice).get(component);
+                abandonTransfer(transfer, waiting.slot, sourceSlot != null && sourceSlot.waiting);
+                releaseMutex();
+                throw failure;
+            }
+            releaseSourceSlot(transfer);
+            finishPreparation(transfer);
+        }
+        else {
+            awaitGrant(waiting);
+            if (!waiting.destination.equals(destDevice)) {
+                ((ReroutableTransfer) transfer).reroute(waiting.destination);
+            }
+            prepareTransfer(transfer, waiting.slot);
+        }
         waiting.slot.sem.acquire();
         performTransfer(transfer, waiting.slot);
     }
 
-    void prepareTransfer(ComponentTransfer transfer) throws InterruptedException{
+    // Afterwards the mutex is held, whether inherited from the granting thread or acquired here
+    private void awaitGrant(WaitForSlot waiting) throws InterruptedException, TransferException {
+        waiting.sem.acquire();
+        if (waiting.rejection != null) {
+            throw waiting.rejection;
+        }
+        if (!waiting.inheritsMutex) {
+            acquireMutex();
+        }
+    }
+
+    // The destination slot is null for removals
+    void prepareTransfer(ComponentTransfer transfer, SlotStatus destinationSlot) throws InterruptedException{
+        releaseSourceSlot(transfer);
+        long started = System.nanoTime();
+        try {
+            transfer.prepare();
+        } catch (RuntimeException e) {
+            acquireMutex();
+            abandonTransfer(transfer, destinationSlot, true);
+            releaseMutex();
+            throw e;
+        }
+        recordDuration(transfer, DurationModel.Phase.PREPARE, started);
+        finishPreparation(transfer);
+    }
+
+    // Called with the mutex after a failed prepare, the component stays where it was. If its slot was already
+    // promised, the next owner still gets it and the component keeps the device over capacity for a while.
+    private void abandonTransfer(ComponentTransfer transfer, SlotStatus destinationSlot, boolean sourceReleased) {
+        DeviceId sourceDevice = transfer.getSourceDeviceId();
+        DeviceId destDevice = transfer.getDestinationDeviceId();
+        ComponentId component = transfer.getComponentId();
+
+        if (sourceReleased && sourceDevice != null) {
+            Map<ComponentId, SlotStatus> sourceSlots = deviceSlots.get(sourceDevice);
+            SlotStatus slot = sourceSlots.get(component);
+            if (slot.waiting) {
+                sourceSlots.remove(component);
+                slot.component = slot.reservedFor;
+                sourceSlots.put(slot.component, slot);
+                slot.sem.release();
+                sourceSlots.put(component, new SlotStatus(component));
+                withdrawBeingFreeSlots(sourceDevice);
+            }
+            else {
+                slot.beingFree = false;
+                changingSlots.get(sourceDevice).remove(slot);
+            }
+        }
+        if (destinationSlot != null) {
+            Map<ComponentId, SlotStatus> destinationSlots = deviceSlots.get(destDevice);
+            if (destinationSlot.component.equals(component)) {// Free slot, or the previous owner already left
+                destinationSlots.remove(component);
+                changingSlots.get(destDevice).remove(destinationSlot);
+                grantFreeSlots(destDevice);
+                completeDrain(destDevice);
+            }
+            else {// The previous owner is still preparing and frees the slot when done
+                destinationSlot.waiting = false;
+                destinationSlot.reservedFor = null;
+                destinationSlot.beingFree = freeSlots(destDevice) >= 0;
+            }
+        }
+        endOperation(component);
+    }
+
+    private void recordDuration(ComponentTransfer transfer, DurationModel.Phase phase, long started) {
+        DurationModel model = durationModel;
+        if (model != null) {
+            model.record(transfer.getSourceDeviceId(), transfer.getDestinationDeviceId(), phase,
+                    System.nanoTime() - started);
+        }
+    }
+
+    // Head of the queue, or with a grant window the waiter among the first ones whose own source slot
+    // is expected to free soonest; additions free nothing. A waiter passed over window times goes first.
+    private WaitForSlot nextWaiter(LinkedList<WaitForSlot> queue) {
+        DurationModel model = durationModel;
+        int window = grantWindow;
+        if (model == null || window <= 1 || queue.peek().bypassed >= window) {
+            return queue.remove();
+        }
+        WaitForSlot best = null;
+        double bestWait = Double.POSITIVE_INFINITY;
+        int considered = 0;
+        for (WaitForSlot waiting : queue) {
+            if (considered++ == window) {
+                break;
+            }
+            double wait = waiting.source == null ? Double.NaN
+                    : model.get(waiting.source, DurationModel.Phase.PREPARE, DurationModel.Direction.OUT).getMeanNanos();
+            if (Double.isNaN(wait)) {
+                wait = Double.POSITIVE_INFINITY;
+            }
+            if (best == null || wait < bestWait) {
+                best = waiting;
+                bestWait = wait;
+            }
+        }
+        for (WaitForSlot waiting : queue) {
+            if (waiting == best) {
+                break;
+            }
+            waiting.bypassed++;
+        }
+        queue.remove(best);
+        return best;
+    }
+
+    private void releaseSourceSlot(ComponentTransfer transfer) {
         DeviceId sourceDevice = transfer.getSourceDeviceId();
         ComponentId component = transfer.getComponentId();
 
         // Freeing current slot, make it available for other transfers
         if (sourceDevice != null) {
             SlotStatus slot = deviceSlots.get(sourceDevice).get(component);
-            Queue<WaitForSlot> queue = queueToDevices.get(sourceDevice);
-            if (!queue.isEmpty() && !slot.waiting) {
-                WaitForSlot waiting = queue.remove();
+            LinkedList<WaitForSlot> queue = queueToDevices.get(sourceDevice);
+            if (slot.waiting || freeSlots(sourceDevice) < 0 || groupGoesFirst(sourceDevice)) {
+                releaseMutex();// Already taken, retired by shrinking, or freed for a group once prepared
+            }
+            else if (!queue.isEmpty()) {
+                WaitForSlot waiting = nextWaiter(queue);
+                leftQueue(waiting, sourceDevice);
                 slot.waiting = true;
+                slot.reservedFor = waiting.component;
+                slot.reservedSince = System.nanoTime();
+                changingSlots.get(sourceDevice).add(slot);
                 waiting.slot = slot;
+                // A speculative waiter may still be preparing, the critical section is not handed to it
+                waiting.inheritsMutex = !waiting.speculative;
                 waiting.sem.release();// Inheriting critical section
+                if (waiting.speculative) {
+                    releaseMutex();
+                }
             }
-            else if (!slot.waiting) {
+            else {
                 slot.beingFree = true;
-                mutex.release();
+                changingSlots.get(sourceDevice).add(slot);
+                releaseMutex();
             }
         }
         else {
-            mutex.release();
+            releaseMutex();
         }
+    }
 
-        transfer.prepare();
+    private void finishPreparation(ComponentTransfer transfer) throws InterruptedException {
+        DeviceId sourceDevice = transfer.getSourceDeviceId();
+        ComponentId component = transfer.getComponentId();
 
         // Done preparing, awake the transfer waiting to perform on this slot
         if (sourceDevice != null) {
-            mutex.acquire();
+            acquireMutex();
+            DurationModel model = durationModel;
+            if (model != null) {
+                model.recordSlotRelease(sourceDevice);
+            }
             SlotStatus slot = deviceSlots.get(sourceDevice).get(component);
             if (slot.waiting) {
+                // Key the slot by its next owner at once, this component may come back before the owner performs
+                deviceSlots.get(sourceDevice).remove(component);
+                slot.component = slot.reservedFor;
+                deviceSlots.get(sourceDevice).put(slot.component, slot);
                 slot.sem.release();
             }
             else {
                 deviceSlots.get(sourceDevice).remove(component);
+                changingSlots.get(sourceDevice).remove(slot);
+                grantFreeSlots(sourceDevice);
+                completeDrain(sourceDevice);
             }
-            mutex.release();
+            releaseMutex();
         }
     }
     void performTransfer(ComponentTransfer transfer, SlotStatus slot) {
@@ -270,57 +1019,824 @@ public class StorageSystemImp implements StorageSystem {
         ComponentId component = transfer.getComponentId();
         try {
             if (slot != null) {// Acquire the slot for this transfer
-                mutex.acquire();
+                acquireMutex();
                 deviceSlots.get(destDevice).remove(slot.component);
                 slot.waiting = false;
                 slot.beingFree = false;
                 slot.component = component;
                 deviceSlots.get(destDevice).put(component, slot);
-                mutex.release();
+                changingSlots.get(destDevice).remove(slot);
+                releaseMutex();
             }
 
-            transfer.perform();
+            PerformLimiter limiter = performLimiter;
+            if (limiter != null) {
+                limiter.acquire(transfer);
+            }
+            try {
+                long started = System.nanoTime();
+                transfer.perform();
+                recordDuration(transfer, DurationModel.Phase.PERFORM, started);
+            } catch (RuntimeException e) {
+                failPerform(transfer);
+                throw e;
+            } finally {
+                if (limiter != null) {
+                    limiter.release(transfer);
+                }
+            }
 
             // Register changes
-            mutex.acquire();
-            if (destDevice == null) {
-                componentPlacement.remove(component);
+            if (combining) {
+                Completion completion = new Completion(transfer);
+                pendingCompletions.add(completion);
+                if (tryAcquireMutex()) {// Become the combiner, otherwise the current holder applies it on release
+                    mutexAcquisitions.increment();
+                    releaseMutex();
+                }
+                while (!completion.applied) {
+                    LockSupport.park(this);
+                }
             }
             else {
-                componentPlacement.put(component, destDevice);
+                acquireMutex();
+                registerCompletion(transfer);
+                releaseMutex();
             }
-            beingOperatedOn.remove(component);
-            mutex.release();
         }
         catch (InterruptedException e) {
             throw new RuntimeException("panic: unexpected thread interruption");
         }
     }
 
-    private void validateTransfer (ComponentTransfer transfer) throws TransferException {
+    // After a failed perform the component always goes back to its source, so the caller knows where it is.
+    // If the source slot was handed over meanwhile, the source stays over capacity until slots it frees are retired.
+    private void failPerform(ComponentTransfer transfer) throws InterruptedException {
         DeviceId sourceDevice = transfer.getSourceDeviceId();
         DeviceId destDevice = transfer.getDestinationDeviceId();
         ComponentId component = transfer.getComponentId();
 
-        if (sourceDevice == null && destDevice == null) {
-            mutex.release();
-            throw new IllegalTransferType(component);
+        acquireMutex();
+        if (sourceDevice != null) {// Not drained while the component is placed there, see completeDrain
+            deviceSlots.get(sourceDevice).put(component, new SlotStatus(component));
+            withdrawBeingFreeSlots(sourceDevice);
         }
+        if (destDevice != null) {
+            deviceSlots.get(destDevice).remove(component);
+            grantFreeSlots(destDevice);
+            completeDrain(destDevice);
+        }
+        endOperation(component);
+        releaseMutex();
+    }
 
-        if (sourceDevice != null) {
-            if (!deviceTotalSlots.containsKey(sourceDevice)) {
-                mutex.release();
-                throw new DeviceDoesNotExist(sourceDevice);
-            }
-
-            if (!componentPlacement.containsKey(component) || !componentPlacement.get(component).equals(sourceDevice)) {
-                mutex.release();
-                throw new ComponentDoesNotExist(component, sourceDevice);
-            }
+    private void registerCompletion(ComponentTransfer transfer) {
+        DeviceId sourceDevice = transfer.getSourceDeviceId();
+        DeviceId destDevice = transfer.getDestinationDeviceId();
+        ComponentId component = transfer.getComponentId();
+        if (destDevice == null) {
+            componentPlacement.remove(component);
+        }
+        else {
+            componentPlacement.put(component, destDevice);
+            deviceComponents.get(destDevice).add(component);
+        }
+        if (sourceDevice != null) {
+            deviceComponents.get(sourceDevice).remove(component);
+            completeDrain(sourceDevice);
+        }
+        endOperation(component);
+        MappedPlacementStore store = placementStore;
+        if (store != null) {
+            if (destDevice == null) {
+                store.remove(component);
+            }
+            else if (!store.put(component, destDevice)) {// Only if devices grew after attaching
+                placementStore = null;
+                placementStoreFull = true;
+            }
+        }
+        PlacementEventRing events = placementEvents;
+        if (events != null) {// Published in the critical section, so events of a component keep their order
+            events.publish(transfer.getSourceDeviceId() == null ? PlacementEventRing.Type.ADDED
+                            : destDevice == null ? PlacementEventRing.Type.REMOVED : PlacementEventRing.Type.MOVED,
+                    component, transfer.getSourceDeviceId(), destDevice);
+        }
+    }
+
+    public void addDevice(DeviceId device, int totalSlots) {
+        if (device == null || totalSlots <= 0) {
+            throw new IllegalArgumentException("null device or device with 0 or less capacity");
+        }
+        try {
+            acquireMutex();
+            if (deviceTotalSlots.containsKey(device)) {
+                releaseMutex();
+                throw new IllegalArgumentException("device " + device + " already exists");
+            }
+            deviceTotalSlots.put(device, totalSlots);
+            deviceSlots.put(device, new HashMap<>());
+            changingSlots.put(device, Collections.newSetFromMap(new IdentityHashMap<>()));
+            deviceComponents.put(device, ConcurrentHashMap.newKeySet());
+            queueToDevices.put(device, new LinkedList<>());
+            groupQueues.put(device, new LinkedList<>());
+            releaseMutex();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    public void setDeviceTier(DeviceId device, DeviceTier tier) {
+        if (device == null || tier == null) {
+            throw new IllegalArgumentException("null device or tier");
+        }
+        try {
+            acquireMutex();
+            if (!deviceTotalSlots.containsKey(device)) {
+                releaseMutex();
+                throw new IllegalArgumentException("device " + device + " does not exist");
+            }
+            deviceTiers.put(device, tier);
+            releaseMutex();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    // Growing wakes queued transfers at once, shrinking retires slots as their components leave
+    public void resizeDevice(DeviceId device, int totalSlots) {
+        if (device == null || totalSlots <= 0) {
+            throw new IllegalArgumentException("null device or device with 0 or less capacity");
+        }
+        try {
+            acquireMutex();
+            if (!deviceTotalSlots.containsKey(device) || decommissioned.containsKey(device)) {
+                releaseMutex();
+                throw new IllegalArgumentException("device " + device + " does not exist or is decommissioned");
+            }
+            deviceTotalSlots.put(device, totalSlots);
+            for (Iterator<WaitForGroup> it = groupQueues.get(device).iterator(); it.hasNext();) {
+                WaitForGroup group = it.next();
+                if (group.members.size() > totalSlots) {
+                    it.remove();
+                    rejectGroup(group, new DeviceOverloaded(device));
+                }
+            }
+            withdrawBeingFreeSlots(device);
+            grantFreeSlots(device);
+            releaseMutex();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    // Rejects queued and new inbound transfers, the future completes when the device is empty and removed
+    public CompletableFuture<Void> decommissionDevice(DeviceId device) {
+        if (device == null) {
+            throw new IllegalArgumentException("null device");
+        }
+        try {
+            acquireMutex();
+            if (!deviceTotalSlots.containsKey(device)) {
+                releaseMutex();
+                throw new IllegalArgumentException("device " + device + " does not exist");
+            }
+            CompletableFuture<Void> drained = decommissioned.get(device);
+            if (drained == null) {
+                drained = new CompletableFuture<>();
+                decommissioned.put(device, drained);
+                deviceTotalSlots.put(device, 0);
+                for (SlotReservation reservation : new ArrayList<>(reservations)) {
+                    if (reservation.getDeviceId().equals(device)) {
+                        consumeReservation(reservation, reservation.getRemainingSlots());
+                    }
+                }
+                withdrawBeingFreeSlots(device);
+
+                LinkedList<WaitForSlot> queue = queueToDevices.get(device);
+                while (!queue.isEmpty()) {
+                    WaitForSlot waiting = queue.remove();
+                    waiting.candidates.remove(device);
+                    if (!waiting.candidates.isEmpty()) {// Still waits for its other devices
+                        if (waiting.destination.equals(device)) {
+                            waiting.destination = waiting.candidates.get(0);
+                        }
+                        continue;
+                    }
+                    leftQueue(waiting, device);
+                    endOperation(waiting.component);
+                    waiting.rejection = new DeviceDecommissioned(device);
+                    waiting.sem.release();
+                }
+                LinkedList<WaitForGroup> groups = groupQueues.get(device);
+                while (!groups.isEmpty()) {
+                    rejectGroup(groups.remove(), new DeviceDecommissioned(device));
+                }
+                for (Iterator<WaitForAdmission> it = admissionQueue.iterator(); it.hasNext();) {
+                    WaitForAdmission waiting = it.next();
+                    if (waiting.device.equals(device)) {
+                        it.remove();
+                        waiting.sem.release();
+                    }
+                }
+                completeDrain(device);
+            }
+            releaseMutex();
+            return drained;
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    private int freeSlots(DeviceId device) {
+        return deviceTotalSlots.get(device) - deviceSlots.get(device).size() - reservedSlots.getOrDefault(device, 0);
+    }
+
+    // Sets slots aside for transfers executed with the returned token, null if the device has fewer free slots
+    public SlotReservation reserveSlots(DeviceId device, int slots, long leaseMillis) {
+        if (device == null || slots <= 0 || leaseMillis <= 0) {
+            throw new IllegalArgumentException("null device, no slots or no lease");
+        }
+        try {
+            acquireMutex();
+            if (!deviceTotalSlots.containsKey(device) || decommissioned.containsKey(device)) {
+                releaseMutex();
+                throw new IllegalArgumentException("device " + device + " does not exist or is decommissioned");
+            }
+            SlotReservation reservation = null;
+            if (freeSlots(device) >= slots) {
+                reservation = new SlotReservation(this, device, slots);
+                reservedSlots.merge(device, slots, Integer::sum);
+                reservations.add(reservation);
+                if (leaseTimer == null) {
+                    leaseTimer = Executors.newSingleThreadScheduledExecutor(DaemonThreads.named("reservation-lease"));
+                }
+                reservation.expiry = leaseTimer.schedule(reservation::release, leaseMillis, TimeUnit.MILLISECONDS);
+            }
+            releaseMutex();
+            return reservation;
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    void releaseReservation(SlotReservation reservation) {
+        try {
+            acquireMutex();
+            if (reservation.getRemainingSlots() > 0) {
+                consumeReservation(reservation, reservation.getRemainingSlots());
+                grantFreeSlots(reservation.getDeviceId());
+            }
+            releaseMutex();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    private void consumeReservation(SlotReservation reservation, int slots) {
+        reservation.setRemainingSlots(reservation.getRemainingSlots() - slots);
+        reservedSlots.merge(reservation.getDeviceId(), -slots, Integer::sum);
+        signalRelease();
+        if (reservation.getRemainingSlots() == 0) {
+            reservations.remove(reservation);
+            if (reservation.expiry != null) {// Slots claimed for a group have no lease
+                reservation.expiry.cancel(false);
+            }
+        }
+    }
+
+    // Slots that are being freed on an overfull device are retired instead of reused
+    private void withdrawBeingFreeSlots(DeviceId device) {
+        int excess = -freeSlots(device);
+        for (SlotStatus slot : deviceSlots.get(device).values()) {
+            if (excess <= 0) {
+                break;
+            }
+            if (slot.beingFree) {
+                slot.beingFree = false;
+                changingSlots.get(device).remove(slot);
+                excess--;
+            }
+        }
+    }
+
+    // Hands free slots to queued transfers in FIFO order, they acquire the mutex on their own.
+    // A group at the head that cannot start yet keeps the free slots, nobody behind it passes.
+    private void grantFreeSlots(DeviceId device) {
+        LinkedList<WaitForSlot> queue = queueToDevices.get(device);
+        LinkedList<WaitForGroup> groups = groupQueues.get(device);
+        while (!queue.isEmpty() || !groups.isEmpty()) {
+            if (groupGoesFirst(device) || (!groups.isEmpty() && freeSlots(device) <= 0)) {
+                if (!startGroup(device, groupGoesFirst(device))) {
+                    break;
+                }
+                groups.removeFirst();
+            }
+            else if (freeSlots(device) > 0) {
+                grantSlot(nextWaiter(queue), device);
+            }
+            else {
+                break;
+            }
+        }
+    }
+
+    // Starts the first group once every member has a slot: a free one, or the source slot of a transfer queued
+    // for the source of the member that leaves the device, the two swap places as in a cycle. Swaps take no free
+    // slots, so a group needing none starts even behind single transfers. Nothing is claimed before the start.
+    private boolean startGroup(DeviceId device, boolean first) {
+        WaitForGroup group = groupQueues.get(device).getFirst();
+        List<ComponentTransfer> swappedMembers = new ArrayList<>();
+        List<WaitForSlot> partners = new ArrayList<>();
+        for (ComponentTransfer member : group.members) {
+            DeviceId source = member.getSourceDeviceId();
+            if (source == null) {
+                continue;
+            }
+            for (WaitForSlot waiting : queueToDevices.get(source)) {
+                if (device.equals(waiting.source) && !partners.contains(waiting)) {
+                    swappedMembers.add(member);
+                    partners.add(waiting);
+                    break;
+                }
+            }
+        }
+        int needed = group.members.size() - partners.size();
+        if (needed > (first ? freeSlots(device) : 0)) {
+            return false;
+        }
+
+        // Queues are changed only after the search, leftQueue edits the queues of other candidates
+        for (int i = 0; i < partners.size(); ++i) {
+            ComponentTransfer member = swappedMembers.get(i);
+            WaitForSlot waiting = partners.get(i);
+            DeviceId source = member.getSourceDeviceId();
+            queueToDevices.get(source).remove(waiting);
+            leftQueue(waiting, source);
+            waiting.slot = handOver(source, member.getComponentId(), waiting.component);
+            group.swaps.put(member.getComponentId(), handOver(device, waiting.component, member.getComponentId()));
+            waiting.sem.release();
+        }
+        if (needed > 0) {
+            group.reservation.setRemainingSlots(needed);
+            reservedSlots.merge(device, needed, Integer::sum);
+            reservations.add(group.reservation);
+        }
+        group.sem.release();
+        return true;
+    }
+
+    // The slot of a component that has not started leaving yet, promised to the one coming in
+    private SlotStatus handOver(DeviceId device, ComponentId leaving, ComponentId coming) {
+        SlotStatus slot = deviceSlots.get(device).get(leaving);
+        slot.waiting = true;
+        slot.beingFree = false;
+        slot.reservedFor = coming;
+        slot.reservedSince = System.nanoTime();
+        changingSlots.get(device).add(slot);
+        return slot;
+    }
+
+    private void rejectGroup(WaitForGroup group, TransferException reason) {
+        for (ComponentTransfer member : group.members) {
+            endOperation(member.getComponentId());
+        }
+        group.rejection = reason;
+        group.sem.release();
+    }
+
+    // A group goes before the single transfers that have been waiting shorter
+    private boolean groupGoesFirst(DeviceId device) {
+        LinkedList<WaitForGroup> groups = groupQueues.get(device);
+        LinkedList<WaitForSlot> queue = queueToDevices.get(device);
+        return !groups.isEmpty() && (queue.isEmpty() || groups.getFirst().since <= queue.getFirst().since);
+    }
+
+    private void grantSlot(WaitForSlot waiting, DeviceId device) {
+        leftQueue(waiting, device);
+        SlotStatus slot = new SlotStatus(waiting.component);
+        slot.sem.release();// Nobody is leaving this slot
+        deviceSlots.get(device).put(waiting.component, slot);
+        waiting.slot = slot;
+        waiting.sem.release();
+    }
+
+    // Lets the oldest waiter stalled for too long in, over the capacity of the device. Spill slots are not given
+    // back explicitly: the device keeps absorbing freed slots, as a shrunk one does, until it is within capacity.
+    private void spillStalledWaiters() {
+        try {
+            acquireMutex();
+            long now = System.nanoTime();
+            for (DeviceId device : deviceTotalSlots.keySet()) {
+                LinkedList<WaitForSlot> queue = queueToDevices.get(device);
+                while (!queue.isEmpty() && freeSlots(device) + spillSlots > 0) {
+                    WaitForSlot oldest = queue.getFirst();
+                    for (WaitForSlot waiting : queue) {
+                        if (waiting.since < oldest.since) {
+                            oldest = waiting;
+                        }
+                    }
+                    if (now - oldest.since < spillStallNanos) {
+                        break;
+                    }
+                    queue.remove(oldest);
+                    grantSlot(oldest, device);
+                    withdrawBeingFreeSlots(device);
+                    spilledGrants.increment();
+                }
+            }
+            releaseMutex();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    // A component moving out still counts until its perform succeeds, a failed one comes back
+    private void endOperation(ComponentId component) {
+        beingOperatedOn.remove(component);
+        signalRelease();
+    }
+
+    private void signalRelease() {
+        CompletableFuture<Void> released = nextRelease;
+        if (released != null) {
+            nextRelease = null;
+            released.complete(null);
+        }
+    }
+
+    // Completes at the next release, for planners that wait for busy components instead of polling.
+    // Ask before looking at the state, a release in between completes the future at once.
+    public CompletableFuture<Void> nextRelease() {
+        try {
+            acquireMutex();
+            if (nextRelease == null) {
+                nextRelease = new CompletableFuture<>();
+            }
+            CompletableFuture<Void> released = nextRelease;
+            releaseMutex();
+            return released;
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    private void completeDrain(DeviceId device) {
+        CompletableFuture<Void> drained = decommissioned.get(device);
+        if (drained != null && deviceSlots.get(device).isEmpty() && deviceComponents.get(device).isEmpty()) {
+            decommissioned.remove(device);
+            deviceTotalSlots.remove(device);
+            deviceSlots.remove(device);
+            changingSlots.remove(device);
+            deviceComponents.remove(device);
+            queueToDevices.remove(device);
+            groupQueues.remove(device);
+            reservedSlots.remove(device);
+            deviceTiers.remove(device);
+            drained.complete(null);
+        }
+    }
+
+    // Waiters a lifted or looser limit admits are let into the queues at once
+    public void setAdmissionControl(AdmissionControl control) {
+        try {
+            acquireMutex();
+            admissionControl = control;
+            wakeAdmitted();
+            releaseMutex();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    // Completing threads hand their bookkeeping to a single combiner instead of each taking the mutex
+    public void setCombining(boolean enabled) {
+        combining = enabled;
+    }
+
+    public void setDurationModel(DurationModel model) {
+        durationModel = model;
+    }
+
+    public DurationModel getDurationModel() {
+        return durationModel;
+    }
+
+    // Up to slots waiters per device that have been queued for stallMillis are let in over capacity, 0 disables
+    public synchronized void setSpillSlots(int slots, long stallMillis) {
+        if (slots < 0 || (slots > 0 && stallMillis <= 0)) {// The stall is unused without spill slots
+            throw new IllegalArgumentException("invalid spill slots");
+        }
+        if (spillCheck != null) {
+            spillCheck.cancel(false);
+            spillCheck = null;
+        }
+        spillSlots = slots;
+        spillStallNanos = TimeUnit.MILLISECONDS.toNanos(stallMillis);
+        if (slots > 0) {
+            if (spillTimer == null) {
+                spillTimer = Executors.newSingleThreadScheduledExecutor(DaemonThreads.named("spill-check"));
+            }
+            long period = Math.max(1, stallMillis / 4);
+            spillCheck = spillTimer.scheduleWithFixedDelay(this::spillStalledWaiters, period, period,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public long getSpilledGrants() {
+        return spilledGrants.sum();
+    }
+
+    // 0 or 1 keeps plain FIFO grants
+    public void setGrantWindow(int window) {
+        if (window < 0) {
+            throw new IllegalArgumentException("negative grant window");
+        }
+        grantWindow = window;
+    }
+
+    // Expected time until a queued transfer completes: its position times the interval between slot
+    // releases on the device, plus its own prepare and perform; -1 if it is not queued or nothing is known yet
+    public long estimateCompletionMillis(ComponentId component) {
+        DurationModel model = durationModel;
+        if (model == null) {
+            return -1;
+        }
+        try {
+            acquireMutex();
+            WaitForSlot waiting = queuedByComponent.get(component);
+            double best = Double.NaN;
+            if (waiting != null) {
+                for (DeviceId candidate : waiting.candidates) {
+                    int position = queueToDevices.get(candidate).indexOf(waiting) + 1;
+                    double interval = model.getSlotReleaseInterval(candidate).getMeanNanos();
+                    double eta = position * interval
+                            + orZero(waiting.source == null ? Double.NaN : model.get(waiting.source,
+                                    DurationModel.Phase.PREPARE, DurationModel.Direction.OUT).getMeanNanos())
+                            + orZero(model.get(candidate, DurationModel.Phase.PERFORM,
+                                    DurationModel.Direction.IN).getMeanNanos());
+                    if (!Double.isNaN(eta) && (Double.isNaN(best) || eta < best)) {
+                        best = eta;
+                    }
+                }
+            }
+            releaseMutex();
+            return Double.isNaN(best) ? -1 : (long) (best / 1_000_000);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    private static double orZero(double value) {
+        return Double.isNaN(value) ? 0 : value;
+    }
+
+    public void setPerformLimiter(PerformLimiter limiter) {
+        performLimiter = limiter;
+    }
+
+    // Null forgets the topology, all destinations of a multi-destination transfer cost the same again
+    public void setTopology(Topology topology) {
+        this.topology = topology;
+    }
+
+    public Topology getTopology() {
+        return topology;
+    }
+
+    // Changes completed before the first call are not published
+    public synchronized PlacementEventRing enablePlacementEvents(int capacity) {
+        if (placementEvents == null) {
+            placementEvents = new PlacementEventRing(capacity);
+        }
+        return placementEvents;
+    }
+
+    // The store is brought up to date at once and then written in place as transfers complete.
+    // A store kept from a previous run gives the placement to start with through readAll.
+    // It needs a record for every slot, so it cannot fill up while the devices keep their sizes.
+    public void attachPlacementStore(MappedPlacementStore store) {
+        try {
+            acquireMutex();
+            if (store != null) {
+                int needed = spillSlots * deviceTotalSlots.size();
+                for (int slots : deviceTotalSlots.values()) {
+                    needed += slots;
+                }
+                needed = Math.max(needed, componentPlacement.size());
+                if (store.getCapacity() < needed) {
+                    releaseMutex();
+                    throw new IllegalArgumentException("placement store has " + store.getCapacity()
+                            + " records, the devices have " + needed + " slots");
+                }
+                store.recover();
+                store.replaceAll(componentPlacement);
+            }
+            placementStore = store;
+            placementStoreFull = false;
+            releaseMutex();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    // True once the attached store filled up and was detached, until a store is attached again
+    public boolean isPlacementStoreFull() {
+        return placementStoreFull;
+    }
+
+    public List<DeviceLoad> snapshotLoad() {
+        List<DeviceLoad> loads = new ArrayList<>(deviceTotalSlots.size());
+        try {
+            acquireMutex();
+            for (DeviceId device : deviceTotalSlots.keySet()) {
+                Map<ComponentId, SlotStatus> slots = deviceSlots.get(device);
+                List<ComponentId> idle = new ArrayList<>(slots.size());
+                for (ComponentId component : slots.keySet()) {
+                    if (!beingOperatedOn.contains(component)) {
+                        idle.add(component);
+                    }
+                }
+                loads.add(new DeviceLoad(device, deviceTiers.getOrDefault(device, DeviceTier.STANDARD),
+                        deviceTotalSlots.get(device),
+                        slots.size() + reservedSlots.getOrDefault(device, 0),
+                        queueToDevices.get(device).size(), idle));
+            }
+            releaseMutex();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+        return loads;
+    }
+
+    public WaitGraph snapshotWaitGraph() {
+        List<WaitGraph.Device> devices = new ArrayList<>(deviceTotalSlots.size());
+        List<WaitGraph.Waiter> waiters = new ArrayList<>();
+        try {
+            acquireMutex();
+            long now = System.nanoTime();
+            Set<WaitForSlot> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (DeviceId device : deviceTotalSlots.keySet()) {
+                int beingFree = 0;
+                int handoff = 0;
+                Map<ComponentId, SlotStatus> slots = deviceSlots.get(device);
+                for (Iterator<SlotStatus> it = changingSlots.get(device).iterator(); it.hasNext();) {
+                    SlotStatus slot = it.next();
+                    if (slots.get(slot.component) != slot || !(slot.waiting || slot.beingFree)) {
+                        it.remove();// Left without passing a place that unmarks it
+                        continue;
+                    }
+                    if (slot.beingFree) {
+                        beingFree++;
+                    }
+                    if (slot.waiting && !slot.component.equals(slot.reservedFor)) {
+                        handoff++;
+                        waiters.add(new WaitGraph.Waiter(slot.reservedFor, componentPlacement.get(slot.reservedFor),
+                                List.of(device), WaitGraph.Kind.HANDOFF, slot.component, now - slot.reservedSince));
+                    }
+                }
+                LinkedList<WaitForSlot> queue = queueToDevices.get(device);
+                for (WaitForSlot waiting : queue) {
+                    if (queued.add(waiting)) {
+                        waiters.add(new WaitGraph.Waiter(waiting.component, waiting.source, waiting.candidates,
+                                WaitGraph.Kind.QUEUED, null, now - waiting.since));
+                    }
+                }
+                for (WaitForGroup group : groupQueues.get(device)) {
+                    for (ComponentTransfer member : group.members) {
+                        waiters.add(new WaitGraph.Waiter(member.getComponentId(), member.getSourceDeviceId(),
+                                List.of(device), WaitGraph.Kind.GROUP, null, now - group.since));
+                    }
+                }
+                devices.add(new WaitGraph.Device(device, deviceTotalSlots.get(device),
+                        deviceSlots.get(device).size() + reservedSlots.getOrDefault(device, 0),
+                        beingFree, handoff, queue.size()));
+            }
+            releaseMutex();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+        return new WaitGraph(devices, waiters);
+    }
+
+    // Weakly consistent scans that never take the mutex and split for parallel streams. Every component
+    // present for the whole scan is reported once; one added, removed or moved meanwhile may or may not be.
+    public Spliterator<ComponentId> scanComponents() {
+        return componentPlacement.keySet().spliterator();
+    }
+
+    public Spliterator<ComponentId> scanDevice(DeviceId device) {
+        Set<ComponentId> components = device == null ? null : deviceComponents.get(device);
+        if (components == null) {
+            throw new IllegalArgumentException("device " + device + " does not exist");
+        }
+        return components.spliterator();
+    }
+
+    // Components placed on the device or holding a slot there for an inbound transfer
+    public Set<ComponentId> snapshotSlotHolders(DeviceId device) {
+        try {
+            acquireMutex();
+            Map<ComponentId, SlotStatus> slots = device == null ? null : deviceSlots.get(device);
+            if (slots == null) {
+                releaseMutex();
+                throw new IllegalArgumentException("device " + device + " does not exist");
+            }
+            Set<ComponentId> holders = new HashSet<>(slots.keySet());
+            holders.addAll(deviceComponents.get(device));
+            releaseMutex();
+            return holders;
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    public Map<ComponentId, DeviceId> snapshotPlacement() {
+        try {
+            acquireMutex();
+            Map<ComponentId, DeviceId> placement = new HashMap<>(componentPlacement);
+            releaseMutex();
+            return placement;
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    // Device holding the component, null if it does not exist; a component being moved is on its source
+    public DeviceId getPlacement(ComponentId component) {
+        try {
+            acquireMutex();
+            DeviceId device = componentPlacement.get(component);
+            releaseMutex();
+            return device;
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    public long getMutexAcquisitions() {
+        return mutexAcquisitions.sum();
+    }
+
+    public long getContendedMutexAcquisitions() {
+        return contendedMutexAcquisitions.sum();
+    }
+
+    private void acquireMutex() throws InterruptedException {
+        if (!tryAcquireMutex()) {
+            contendedMutexAcquisitions.increment();
+            mutex.acquire();
+        }
+        mutexAcquisitions.increment();
+    }
+
+    // Zero timeout still respects fairness, so this does not barge ahead of waiting threads
+    private boolean tryAcquireMutex() {
+        try {
+            return mutex.tryAcquire(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption");
+        }
+    }
+
+    // Every holder applies published completions before letting go, a completion published
+    // after the last check is applied by whoever gets the mutex next
+    private void releaseMutex() {
+        do {
+            Completion completion;
+            while ((completion = pendingCompletions.poll()) != null) {
+                registerCompletion(completion.transfer);
+                completion.applied = true;
+                LockSupport.unpark(completion.owner);
+            }
+            mutex.release();
+        } while (!pendingCompletions.isEmpty() && tryAcquireMutex());
+    }
+
+    private void validateTransfer (ComponentTransfer transfer, boolean supersedes) throws TransferException {
+        DeviceId sourceDevice = transfer.getSourceDeviceId();
+        DeviceId destDevice = transfer.getDestinationDeviceId();
+        ComponentId component = transfer.getComponentId();
+
+        if (sourceDevice == null && destDevice == null) {
+            releaseMutex();
+            throw new IllegalTransferType(component);
+        }
+
+        if (sourceDevice != null) {
+            if (!deviceTotalSlots.containsKey(sourceDevice)) {
+                releaseMutex();
+                throw new DeviceDoesNotExist(sourceDevice);
+            }
+
+            if (!componentPlacement.containsKey(component) || !componentPlacement.get(component).equals(sourceDevice)) {
+                releaseMutex();
+                throw new ComponentDoesNotExist(component, sourceDevice);
+            }
         }
         else {
             if (componentPlacement.containsKey(component)) {
-                mutex.release();
+                releaseMutex();
                 if (destDevice.equals(componentPlacement.get(component))) {
                     throw new ComponentAlreadyExists(component, destDevice);
                 }
@@ -330,27 +1846,34 @@ public class StorageSystemImp implements StorageSystem {
 
         if (destDevice != null) {
             if (!deviceTotalSlots.containsKey(destDevice)) {
-                mutex.release();
+                releaseMutex();
                 throw new DeviceDoesNotExist(destDevice);
             }
 
+            if (decommissioned.containsKey(destDevice)) {
+                releaseMutex();
+                throw new DeviceDecommissioned(destDevice);
+            }
+
             if (componentPlacement.containsKey(component) &&
                     componentPlacement.get(component).equals(destDevice)) {
-                mutex.release();
+                releaseMutex();
                 throw new ComponentDoesNotNeedTransfer(component, destDevice);
             }
         }
 
-        if (beingOperatedOn.contains(component)) {
-            mutex.release();
+        if (!supersedes && beingOperatedOn.contains(component)) {
+            releaseMutex();
             throw new ComponentIsBeingOperatedOn(component);
         }
     }
 
     private static class SlotStatus {
         private ComponentId component;
+        private ComponentId reservedFor;// Component that will perform on this slot
         private boolean beingFree;
         private boolean waiting;
+        private long reservedSince;
         private final Semaphore sem;// Semaphore waiting to perform on this slot
 
         public SlotStatus(ComponentId component) {
@@ -365,14 +1888,62 @@ public class StorageSystemImp implements StorageSystem {
     private static class WaitForSlot {
         private final Semaphore sem;// Semaphore waiting to start transfer
         private SlotStatus slot;// Slot given to start tranfer
+        private boolean inheritsMutex;// Woken by a handoff of the critical section
+        private boolean speculative;// Prepares while queued
+        private TransferException rejection;// Woken without a slot, the transfer fails
         private final DeviceId source;
+        private DeviceId destination;// Device that granted the slot, once granted
         private final ComponentId component;
+        private final List<DeviceId> candidates;// Devices in whose queues the transfer waits
+        private int bypassed;// Times a waiter behind it was granted first
+        private final long since;
 
-        public WaitForSlot(DeviceId source, ComponentId component) {
+        public WaitForSlot(DeviceId source, DeviceId destination, ComponentId component, List<DeviceId> candidates) {
             this.source = source;
+            this.destination = destination;
             this.component = component;
+            this.candidates = candidates;
             sem = new Semaphore(0);
             slot = null;
+            since = System.nanoTime();
+        }
+    }
+
+    private static class Completion {
+        private final ComponentTransfer transfer;
+        private final Thread owner;
+        private volatile boolean applied;
+
+        public Completion(ComponentTransfer transfer) {
+            this.transfer = transfer;
+            owner = Thread.currentThread();
+        }
+    }
+
+    private static class WaitForGroup {
+        private final Semaphore sem;// Semaphore waiting for all slots of the group
+        private final List<? extends ComponentTransfer> members;
+        private final SlotReservation reservation;// Free slots claimed at the start
+        private final Map<ComponentId, SlotStatus> swaps;// Slots of transfers swapping places with members
+        private TransferException rejection;
+        private final long since;
+
+        public WaitForGroup(List<? extends ComponentTransfer> members, SlotReservation reservation) {
+            this.members = members;
+            this.reservation = reservation;
+            swaps = new HashMap<>();
+            sem = new Semaphore(0);
+            since = System.nanoTime();
+        }
+    }
+
+    private static class WaitForAdmission {
+        private final Semaphore sem;// Semaphore waiting for room in the device queue
+        private final DeviceId device;
+
+        public WaitForAdmission(DeviceId device) {
+            this.device = device;
+            sem = new Semaphore(0);
         }
     }
 
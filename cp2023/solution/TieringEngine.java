@@ -0,0 +1,246 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Background task keeping the most accessed components on the fastest tier, moves are issued through execute
+public class TieringEngine {
+    private final StorageSystemImp system;
+    private final TransferFactory transfers;
+    private final AccessSketch sketch;
+    private final int transferBudget;
+    // Moves or swaps started in one period and running at once
+    private final long periodMillis;
+    private final long minHeat;
+    // Accesses needed before a component is worth promoting
+    private final Semaphore transferPermits;
+    private final Set<ComponentId> inFlight;
+    private final AtomicLong promotions;
+    private final AtomicLong demotions;
+    private final AtomicLong failedMoves;
+    private final AtomicLong failedRounds;
+    private volatile RuntimeException lastRoundFailure;
+    private ScheduledExecutorService scheduler;
+    private volatile ExecutorService movers;
+    // Null once stopped, a round still running then gives its permits back
+
+    public TieringEngine(StorageSystemImp system, TransferFactory transfers, AccessSketch sketch,
+                         int transferBudget, long periodMillis, long minHeat) {
+        if (system == null || transfers == null || sketch == null) {
+            throw new IllegalArgumentException("One of given parameters is null");
+        }
+        if (transferBudget <= 0 || periodMillis <= 0 || minHeat < 0) {
+            throw new IllegalArgumentException("Invalid tiering limits");
+        }
+        this.system = system;
+        this.transfers = transfers;
+        this.sketch = sketch;
+        this.transferBudget = transferBudget;
+        this.periodMillis = periodMillis;
+        this.minHeat = minHeat;
+        transferPermits = new Semaphore(transferBudget);
+        inFlight = ConcurrentHashMap.newKeySet();
+        promotions = new AtomicLong();
+        demotions = new AtomicLong();
+        failedMoves = new AtomicLong();
+        failedRounds = new AtomicLong();
+    }
+
+    public void recordAccess(ComponentId component) {
+        sketch.record(component);
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            throw new IllegalStateException("tiering engine already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(DaemonThreads.named("tiering"));
+        movers = Executors.newFixedThreadPool(transferBudget, DaemonThreads.named("tiering-move"));
+        scheduler.scheduleWithFixedDelay(this::tierSafely, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            movers.shutdown();
+            scheduler = null;
+            movers = null;
+        }
+    }
+
+    public long getPromotions() {
+        return promotions.get();
+    }
+
+    public long getDemotions() {
+        return demotions.get();
+    }
+
+    public long getFailedMoves() {
+        return failedMoves.get();
+    }
+
+    // Rounds that threw, the next round runs as scheduled
+    public long getFailedRounds() {
+        return failedRounds.get();
+    }
+
+    // Null until a round fails
+    public RuntimeException getLastRoundFailure() {
+        return lastRoundFailure;
+    }
+
+    // An exception escaping a scheduled task cancels all its later runs
+    private void tierSafely() {
+        try {
+            tierOnce();
+        } catch (RuntimeException e) {
+            lastRoundFailure = e;
+            failedRounds.incrementAndGet();
+        }
+    }
+
+    // Compares every pair of neighbouring tiers, then lets old accesses fade
+    void tierOnce() {
+        Map<DeviceTier, List<DeviceLoad>> byTier = new EnumMap<>(DeviceTier.class);
+        for (DeviceLoad load : system.snapshotLoad()) {
+            if (load.getTotalSlots() > 0) {
+                byTier.computeIfAbsent(load.getTier(), t -> new ArrayList<>()).add(load);
+            }
+        }
+        List<DeviceTier> tiers = new ArrayList<>(byTier.keySet());
+        for (int i = 0; i + 1 < tiers.size(); ++i) {
+            if (!exchange(byTier.get(tiers.get(i)), byTier.get(tiers.get(i + 1)))) {
+                break;
+            }
+        }
+        sketch.decay();
+    }
+
+    // Promotes the hottest components of the slower tier into free slots, then swaps them with the coldest
+    // ones of the faster tier; returns false once the budget is spent
+    private boolean exchange(List<DeviceLoad> faster, List<DeviceLoad> slower) {
+        Map<DeviceId, Integer> free = new HashMap<>();
+        PriorityQueue<Placed> coldest = new PriorityQueue<>(Comparator.comparingLong(placed -> placed.heat));
+        for (DeviceLoad load : faster) {
+            if (load.getQueueLength() == 0) {
+                free.put(load.getDeviceId(), load.getFreeSlots());
+            }
+            for (ComponentId component : load.getIdleComponents()) {
+                if (!inFlight.contains(component)) {
+                    coldest.add(new Placed(component, load.getDeviceId(), sketch.estimate(component)));
+                }
+            }
+        }
+        PriorityQueue<Placed> hottest = new PriorityQueue<>(Comparator.comparingLong(placed -> -placed.heat));
+        for (DeviceLoad load : slower) {
+            for (ComponentId component : load.getIdleComponents()) {
+                long heat = sketch.estimate(component);
+                if (heat >= minHeat && !inFlight.contains(component)) {
+                    hottest.add(new Placed(component, load.getDeviceId(), heat));
+                }
+            }
+        }
+
+        while (!hottest.isEmpty()) {
+            Placed hot = hottest.poll();
+            DeviceId roomiest = null;
+            for (DeviceId device : free.keySet()) {
+                if (free.get(device) > 0 && (roomiest == null || free.get(device) > free.get(roomiest))) {
+                    roomiest = device;
+                }
+            }
+
+            if (roomiest != null) {
+                if (!transferPermits.tryAcquire()) {
+                    return false;
+                }
+                free.put(roomiest, free.get(roomiest) - 1);
+                move(hot.component, hot.device, roomiest, promotions);
+            }
+            else {
+                // Twice as hot, so components of similar heat do not swap back and forth
+                Placed cold = coldest.peek();
+                if (cold == null || cold.heat * 2 >= hot.heat) {
+                    return true;
+                }
+                if (!transferPermits.tryAcquire()) {
+                    return false;
+                }
+                coldest.poll();
+                swap(hot, cold);
+            }
+        }
+        return true;
+    }
+
+    private void move(ComponentId component, DeviceId source, DeviceId destination, AtomicLong counter) {
+        inFlight.add(component);
+        submit(() -> {
+            try {
+                system.execute(transfers.newTransfer(component, source, destination));
+                counter.incrementAndGet();
+            } catch (TransferException e) {
+                // The user moved or removed the component in the meantime
+                failedMoves.incrementAndGet();
+            } finally {
+                inFlight.remove(component);
+                transferPermits.release();
+            }
+        }, component);
+    }
+
+    // Both devices are full, the two moves hand their slots over in one step and fail together
+    private void swap(Placed hot, Placed cold) {
+        inFlight.add(hot.component);
+        inFlight.add(cold.component);
+        submit(() -> {
+            try {
+                system.swap(transfers.newTransfer(hot.component, hot.device, cold.device),
+                        transfers.newTransfer(cold.component, cold.device, hot.device));
+                demotions.incrementAndGet();
+                promotions.incrementAndGet();
+            } catch (TransferException e) {
+                failedMoves.incrementAndGet();
+            } finally {
+                inFlight.remove(hot.component);
+                inFlight.remove(cold.component);
+                transferPermits.release();
+            }
+        }, hot.component, cold.component);
+    }
+
+    // A task not taken by the movers, stopped meanwhile, gives back its permit and its components
+    private void submit(Runnable task, ComponentId... components) {
+        ExecutorService pool = movers;
+        if (pool != null) {
+            try {
+                pool.execute(task);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Shut down by stop after the read
+            }
+        }
+        for (ComponentId component : components) {
+            inFlight.remove(component);
+        }
+        transferPermits.release();
+    }
+
+    private static class Placed {
+        private final ComponentId component;
+        private final DeviceId device;
+        private final long heat;
+
+        public Placed(ComponentId component, DeviceId device, long heat) {
+            this.component = component;
+            this.device = device;
+            this.heat = heat;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Where devices are: device -> host -> rack. Devices that were never placed count as alone in their own rack.
+public class Topology {
+    private final double sameHostCost;
+    private final double sameRackCost;
+    private final double crossRackCost;
+    // Relative costs of a move, additions and removals touch one host and cost as much as a move within it
+    private final Map<DeviceId, String> hosts;
+    private final Map<String, String> racks;
+
+    public Topology() {
+        this(1.0, 2.0, 4.0);
+    }
+
+    public Topology(double sameHostCost, double sameRackCost, double crossRackCost) {
+        if (sameHostCost < 0 || sameRackCost < sameHostCost || crossRackCost < sameRackCost) {
+            throw new IllegalArgumentException("costs have to grow with the distance");
+        }
+        this.sameHostCost = sameHostCost;
+        this.sameRackCost = sameRackCost;
+        this.crossRackCost = crossRackCost;
+        hosts = new ConcurrentHashMap<>();
+        racks = new ConcurrentHashMap<>();
+    }
+
+    public synchronized void place(DeviceId device, String host, String rack) {
+        if (device == null || host == null || rack == null) {
+            throw new IllegalArgumentException("One of given parameters is null");
+        }
+        String current = racks.get(host);
+        if (current != null && !current.equals(rack)) {
+            throw new IllegalArgumentException("host " + host + " is already in rack " + current);
+        }
+        racks.put(host, rack);
+        hosts.put(device, host);
+    }
+
+    public String getHost(DeviceId device) {
+        return device == null ? null : hosts.get(device);
+    }
+
+    public String getRack(DeviceId device) {
+        String host = getHost(device);
+        return host == null ? null : racks.get(host);
+    }
+
+    public double cost(DeviceId source, DeviceId destination) {
+        if (source == null || destination == null) {
+            return sameHostCost;
+        }
+        String sourceHost = getHost(source);
+        String destinationHost = getHost(destination);
+        if (sourceHost == null || destinationHost == null) {
+            return source.equals(destination) ? sameHostCost : crossRackCost;
+        }
+        if (sourceHost.equals(destinationHost)) {
+            return sameHostCost;
+        }
+        return racks.get(sourceHost).equals(racks.get(destinationHost)) ? sameRackCost : crossRackCost;
+    }
+
+    // Fits PerformLimiter.setCost, so bandwidth budgets are charged by distance
+    public double cost(ComponentTransfer transfer) {
+        return cost(transfer.getSourceDeviceId(), transfer.getDestinationDeviceId());
+    }
+}
@@ -0,0 +1,211 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Execute calls written by a TraceRecorder, with the devices and placement the system started from.
+// The file is little-endian: a header with both maps, then fixed-size records in completion order.
+public final class Trace {
+    static final int MAGIC = 0x52545043;
+    static final int VERSION = 1;
+    static final int RECORD_BYTES = 46;
+    static final byte NO_SOURCE = 1;
+    static final byte NO_DESTINATION = 2;
+
+    // Stored as the ordinal, new outcomes go at the end
+    public enum Outcome {
+        COMPLETED,
+        COMPONENT_ALREADY_EXISTS,
+        COMPONENT_DOES_NOT_EXIST,
+        COMPONENT_DOES_NOT_NEED_TRANSFER,
+        COMPONENT_IS_BEING_OPERATED_ON,
+        DEVICE_DECOMMISSIONED,
+        DEVICE_DOES_NOT_EXIST,
+        DEVICE_OVERLOADED,
+        ILLEGAL_TRANSFER_TYPE,
+        RESERVATION_EXPIRED,
+        TRANSFER_SUPERSEDED,
+        OTHER_TRANSFER_EXCEPTION,
+        RUNTIME_EXCEPTION,
+        ERROR;
+
+        public static Outcome of(Throwable failure) {
+            if (failure == null) {
+                return COMPLETED;
+            }
+            if (failure instanceof ComponentAlreadyExists) {
+                return COMPONENT_ALREADY_EXISTS;
+            }
+            if (failure instanceof ComponentDoesNotExist) {
+                return COMPONENT_DOES_NOT_EXIST;
+            }
+            if (failure instanceof ComponentDoesNotNeedTransfer) {
+                return COMPONENT_DOES_NOT_NEED_TRANSFER;
+            }
+            if (failure instanceof ComponentIsBeingOperatedOn) {
+                return COMPONENT_IS_BEING_OPERATED_ON;
+            }
+            if (failure instanceof DeviceDecommissioned) {
+                return DEVICE_DECOMMISSIONED;
+            }
+            if (failure instanceof DeviceDoesNotExist) {
+                return DEVICE_DOES_NOT_EXIST;
+            }
+            if (failure instanceof DeviceOverloaded) {
+                return DEVICE_OVERLOADED;
+            }
+            if (failure instanceof IllegalTransferType) {
+                return ILLEGAL_TRANSFER_TYPE;
+            }
+            if (failure instanceof ReservationExpired) {
+                return RESERVATION_EXPIRED;
+            }
+            if (failure instanceof TransferSuperseded) {
+                return TRANSFER_SUPERSEDED;
+            }
+            if (failure instanceof Error) {
+                return ERROR;
+            }
+            return failure instanceof TransferException ? OTHER_TRANSFER_EXCEPTION : RUNTIME_EXCEPTION;
+        }
+    }
+
+    public static final class Record {
+        private final long arrivalNanos;
+        // Since the recorder was created
+        private final ComponentId component;
+        private final DeviceId source;
+        private final DeviceId destination;
+        // As requested, a rerouted transfer is replayed to its original destination
+        private final long prepareNanos;
+        private final long performNanos;
+        // -1 for phases that did not run
+        private final long latencyNanos;
+        private final Outcome outcome;
+
+        Record(long arrivalNanos, ComponentId component, DeviceId source, DeviceId destination,
+               long prepareNanos, long performNanos, long latencyNanos, Outcome outcome) {
+            this.arrivalNanos = arrivalNanos;
+            this.component = component;
+            this.source = source;
+            this.destination = destination;
+            this.prepareNanos = prepareNanos;
+            this.performNanos = performNanos;
+            this.latencyNanos = latencyNanos;
+            this.outcome = outcome;
+        }
+
+        public long getArrivalNanos() {
+            return arrivalNanos;
+        }
+
+        public ComponentId getComponentId() {
+            return component;
+        }
+
+        public DeviceId getSourceDeviceId() {
+            return source;
+        }
+
+        public DeviceId getDestinationDeviceId() {
+            return destination;
+        }
+
+        public long getPrepareNanos() {
+            return prepareNanos;
+        }
+
+        public long getPerformNanos() {
+            return performNanos;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+    }
+
+    private final Map<DeviceId, Integer> capacities;
+    private final Map<ComponentId, DeviceId> placement;
+    private final List<Record> records;
+    // Sorted by arrival
+
+    private Trace(Map<DeviceId, Integer> capacities, Map<ComponentId, DeviceId> placement, List<Record> records) {
+        this.capacities = Map.copyOf(capacities);
+        this.placement = Map.copyOf(placement);
+        records.sort((a, b) -> Long.compare(a.arrivalNanos, b.arrivalNanos));
+        this.records = List.copyOf(records);
+    }
+
+    public static Trace read(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("trace " + file + " is too large");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read the whole file
+            }
+            buffer.flip();
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IllegalArgumentException(file + " is not a transfer trace");
+            }
+
+            Map<DeviceId, Integer> capacities = new HashMap<>();
+            for (int devices = buffer.getInt(); devices > 0; --devices) {
+                capacities.put(new DeviceId(buffer.getInt()), buffer.getInt());
+            }
+            Map<ComponentId, DeviceId> placement = new HashMap<>();
+            for (int components = buffer.getInt(); components > 0; --components) {
+                placement.put(new ComponentId(buffer.getInt()), new DeviceId(buffer.getInt()));
+            }
+
+            List<Record> records = new ArrayList<>(buffer.remaining() / RECORD_BYTES);
+            Outcome[] outcomes = Outcome.values();
+            while (buffer.remaining() >= RECORD_BYTES) {// A torn last record of a crashed recorder is dropped
+                long arrival = buffer.getLong();
+                ComponentId component = new ComponentId(buffer.getInt());
+                int source = buffer.getInt();
+                int destination = buffer.getInt();
+                byte flags = buffer.get();
+                byte outcome = buffer.get();
+                records.add(new Record(arrival, component,
+                        (flags & NO_SOURCE) != 0 ? null : new DeviceId(source),
+                        (flags & NO_DESTINATION) != 0 ? null : new DeviceId(destination),
+                        buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                        outcome >= 0 && outcome < outcomes.length ? outcomes[outcome] : Outcome.RUNTIME_EXCEPTION));
+            }
+            return new Trace(capacities, placement, records);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Map<DeviceId, Integer> getCapacities() {
+        return capacities;
+    }
+
+    public Map<ComponentId, DeviceId> getPlacement() {
+        return placement;
+    }
+
+    public List<Record> getRecords() {
+        return records;
+    }
+}
@@ -0,0 +1,159 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.StorageSystem;
+import cp2023.exceptions.TransferException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+// Passes every execute to the wrapped system and appends what happened to a trace file, see Trace for the format.
+// Records are buffered, a crash loses at most the unflushed tail.
+public class TraceRecorder implements StorageSystem, AutoCloseable {
+    private static final int BUFFER_RECORDS = 1024;
+
+    private final StorageSystem system;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final long start;
+    private long recorded;
+
+    // Capacities and placement have to be the ones the wrapped system was created with
+    public TraceRecorder(StorageSystem system, Path file,
+                         Map<DeviceId, Integer> capacities, Map<ComponentId, DeviceId> placement) {
+        if (system == null || file == null || capacities == null || placement == null) {
+            throw new IllegalArgumentException("One of given parameters is null");
+        }
+        this.system = system;
+        buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * Trace.RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(20 + 8 * (capacities.size() + placement.size()))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(Trace.MAGIC).putInt(Trace.VERSION).putInt(capacities.size());
+            for (Map.Entry<DeviceId, Integer> device : capacities.entrySet()) {
+                header.putInt(device.getKey().getId()).putInt(device.getValue());
+            }
+            header.putInt(placement.size());
+            for (Map.Entry<ComponentId, DeviceId> component : placement.entrySet()) {
+                header.putInt(component.getKey().getId()).putInt(component.getValue().getId());
+            }
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        start = System.nanoTime();
+    }
+
+    @Override
+    public void execute(ComponentTransfer transfer) throws TransferException {
+        if (transfer == null) {
+            system.execute(null);
+            return;
+        }
+        long arrival = System.nanoTime();
+        ComponentId component = transfer.getComponentId();
+        DeviceId source = transfer.getSourceDeviceId();
+        DeviceId destination = transfer.getDestinationDeviceId();
+        Timing timing = new Timing(transfer);
+        Throwable failure = null;
+        try {
+            system.execute(timing.proxy());
+        } catch (TransferException | RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            record(arrival - start, component, source, destination, timing.prepareNanos, timing.performNanos,
+                    System.nanoTime() - arrival, Trace.Outcome.of(failure));
+        }
+    }
+
+    public synchronized long getRecordedTransfers() {
+        return recorded;
+    }
+
+    public synchronized void flush() {
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void record(long arrival, ComponentId component, DeviceId source, DeviceId destination,
+                                     long prepare, long perform, long latency, Trace.Outcome outcome) {
+        if (buffer.remaining() < Trace.RECORD_BYTES) {
+            flush();
+        }
+        buffer.putLong(arrival)
+                .putInt(component == null ? 0 : component.getId())
+                .putInt(source == null ? 0 : source.getId())
+                .putInt(destination == null ? 0 : destination.getId())
+                .put((byte) ((source == null ? Trace.NO_SOURCE : 0) | (destination == null ? Trace.NO_DESTINATION : 0)))
+                .put((byte) outcome.ordinal())
+                .putLong(prepare)
+                .putLong(perform)
+                .putLong(latency);
+        recorded++;
+    }
+
+    // Times the phases of a transfer
+    private static class Timing implements InvocationHandler {
+        private final ComponentTransfer transfer;
+        private volatile long prepareNanos = -1;
+        private volatile long performNanos = -1;
+
+        public Timing(ComponentTransfer transfer) {
+            this.transfer = transfer;
+        }
+
+        ComponentTransfer proxy() {
+            return TransferProxies.proxy(transfer, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            boolean phase = method.getParameterCount() == 0
+                    && (method.getName().equals("prepare") || method.getName().equals("perform"));
+            long started = System.nanoTime();
+            try {
+                return TransferProxies.forward(transfer, method, args);
+            } finally {
+                if (phase && method.getName().equals("prepare")) {
+                    prepareNanos = System.nanoTime() - started;
+                }
+                else if (phase) {
+                    performNanos = System.nanoTime() - started;
+                }
+            }
+        }
+    }
+}
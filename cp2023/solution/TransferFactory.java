@@ -0,0 +1,12 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+
+// Creates the transfers that the system issues on its own, null devices mean addition or removal
+@FunctionalInterface
+public interface TransferFactory {
+
+    ComponentTransfer newTransfer(ComponentId component, DeviceId source, DeviceId destination);
+}
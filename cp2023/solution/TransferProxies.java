@@ -0,0 +1,49 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentTransfer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Wrappers passing a transfer on to a system have to keep every interface it implements,
+// otherwise the system stops treating it as reroutable, speculatively preparable and so on.
+final class TransferProxies {
+    private TransferProxies() {
+    }
+
+    // Proxy with all interfaces of the transfer, equal only to itself
+    static ComponentTransfer proxy(ComponentTransfer transfer, InvocationHandler handler) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        for (Class<?> c = transfer.getClass(); c != null; c = c.getSuperclass()) {
+            interfaces.addAll(Arrays.asList(c.getInterfaces()));
+        }
+        return (ComponentTransfer) Proxy.newProxyInstance(transfer.getClass().getClassLoader(),
+                interfaces.toArray(new Class<?>[0]), (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        switch (method.getName()) {
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                return transfer.toString();
+                        }
+                    }
+                    return handler.invoke(proxy, method, args);
+                });
+    }
+
+    // Calls the method on the transfer itself, failing with what the transfer threw
+    static Object forward(ComponentTransfer transfer, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(transfer, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Background check for transfers waiting for a slot longer than a threshold, the system is only
+// looked at once per period
+public class TransferWatchdog {
+    public interface Listener {
+        void onStuck(WaitGraph graph, List<WaitGraph.Waiter> overdue);
+    }
+
+    private final StorageSystemImp system;
+    private final long thresholdMillis;
+    private final long periodMillis;
+    private final Listener listener;
+    private Set<ComponentId> reported;
+    // Overdue at the last check, a waiter raises the alarm once however long it stays stuck
+    private final AtomicLong alarms;
+    private final AtomicLong failures;
+    private volatile RuntimeException lastFailure;
+    private ScheduledExecutorService scheduler;
+
+    public TransferWatchdog(StorageSystemImp system, long thresholdMillis, long periodMillis, Listener listener) {
+        if (system == null || listener == null) {
+            throw new IllegalArgumentException("One of given parameters is null");
+        }
+        if (thresholdMillis <= 0 || periodMillis <= 0) {
+            throw new IllegalArgumentException("Invalid watchdog periods");
+        }
+        this.system = system;
+        this.thresholdMillis = thresholdMillis;
+        this.periodMillis = periodMillis;
+        this.listener = listener;
+        reported = new HashSet<>();
+        alarms = new AtomicLong();
+        failures = new AtomicLong();
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            throw new IllegalStateException("watchdog already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(DaemonThreads.named("transfer-watchdog"));
+        scheduler.scheduleWithFixedDelay(this::checkSafely, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public WaitGraph dump() {
+        return system.snapshotWaitGraph();
+    }
+
+    public long getAlarms() {
+        return alarms.get();
+    }
+
+    // Checks or listener calls that threw, the next check runs as scheduled
+    public long getFailures() {
+        return failures.get();
+    }
+
+    // Null until a check or a listener call fails
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    private void checkSafely() {
+        try {
+            checkOnce();
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    void checkOnce() {
+        WaitGraph graph = system.snapshotWaitGraph();
+        List<WaitGraph.Waiter> overdue = graph.getWaitingLongerThan(thresholdMillis);
+        Set<ComponentId> current = new HashSet<>();
+        boolean fresh = false;
+        for (WaitGraph.Waiter waiter : overdue) {
+            current.add(waiter.getComponentId());
+            fresh |= !reported.contains(waiter.getComponentId());
+        }
+        reported = current;
+        if (fresh) {
+            alarms.incrementAndGet();
+            try {
+                listener.onStuck(graph, overdue);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        lastFailure = e;
+        failures.incrementAndGet();
+    }
+}
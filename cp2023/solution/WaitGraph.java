@@ -0,0 +1,212 @@
+package cp2023.solution;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Snapshot of who waits on whom, a device waits on another when a component leaving it waits for a slot there
+public final class WaitGraph {
+    public enum Kind {
+        QUEUED,// In the queues of its candidate devices
+        HANDOFF,// Granted a slot whose previous component is still preparing to leave
+        GROUP// Member of a group waiting until its device has slots for all members
+    }
+
+    public static final class Waiter {
+        private final ComponentId component;
+        private final DeviceId source;
+        private final List<DeviceId> destinations;
+        private final Kind kind;
+        private final ComponentId holder;
+        // Component still occupying the slot, null for queued waiters
+        private final long waitedNanos;
+
+        Waiter(ComponentId component, DeviceId source, List<DeviceId> destinations, Kind kind,
+               ComponentId holder, long waitedNanos) {
+            this.component = component;
+            this.source = source;
+            this.destinations = List.copyOf(destinations);
+            this.kind = kind;
+            this.holder = holder;
+            this.waitedNanos = waitedNanos;
+        }
+
+        public ComponentId getComponentId() {
+            return component;
+        }
+
+        public DeviceId getSourceDeviceId() {
+            return source;
+        }
+
+        public List<DeviceId> getDestinationDeviceIds() {
+            return destinations;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public ComponentId getHolder() {
+            return holder;
+        }
+
+        public long getWaitedMillis() {
+            return waitedNanos / 1_000_000;
+        }
+    }
+
+    public static final class Device {
+        private final DeviceId device;
+        private final int totalSlots;
+        private final int occupiedSlots;
+        private final int beingFreeSlots;
+        private final int handoffSlots;
+        // Slots promised to a component that cannot perform yet
+        private final int queueLength;
+
+        Device(DeviceId device, int totalSlots, int occupiedSlots, int beingFreeSlots, int handoffSlots,
+               int queueLength) {
+            this.device = device;
+            this.totalSlots = totalSlots;
+            this.occupiedSlots = occupiedSlots;
+            this.beingFreeSlots = beingFreeSlots;
+            this.handoffSlots = handoffSlots;
+            this.queueLength = queueLength;
+        }
+
+        public DeviceId getDeviceId() {
+            return device;
+        }
+
+        public int getTotalSlots() {
+            return totalSlots;
+        }
+
+        public int getOccupiedSlots() {
+            return occupiedSlots;
+        }
+
+        public int getBeingFreeSlots() {
+            return beingFreeSlots;
+        }
+
+        public int getHandoffSlots() {
+            return handoffSlots;
+        }
+
+        public int getQueueLength() {
+            return queueLength;
+        }
+    }
+
+    private final List<Device> devices;
+    private final List<Waiter> waiters;
+    // Longest waiting first
+
+    WaitGraph(List<Device> devices, List<Waiter> waiters) {
+        List<Device> sortedDevices = new ArrayList<>(devices);
+        sortedDevices.sort(Comparator.comparing(Device::getDeviceId));
+        List<Waiter> sortedWaiters = new ArrayList<>(waiters);
+        sortedWaiters.sort(Comparator.comparingLong((Waiter w) -> w.waitedNanos).reversed());
+        this.devices = List.copyOf(sortedDevices);
+        this.waiters = List.copyOf(sortedWaiters);
+    }
+
+    public List<Device> getDevices() {
+        return devices;
+    }
+
+    public List<Waiter> getWaiters() {
+        return waiters;
+    }
+
+    public List<Waiter> getOldest(int count) {
+        return waiters.subList(0, Math.min(count, waiters.size()));
+    }
+
+    public List<Waiter> getWaitingLongerThan(long millis) {
+        List<Waiter> overdue = new ArrayList<>();
+        for (Waiter waiter : waiters) {
+            if (waiter.getWaitedMillis() < millis) {
+                break;
+            }
+            overdue.add(waiter);
+        }
+        return overdue;
+    }
+
+    // Number of waiting components per edge, additions wait on behalf of no device and are left out
+    public Map<DeviceId, Map<DeviceId, Integer>> getEdges() {
+        Map<DeviceId, Map<DeviceId, Integer>> edges = new TreeMap<>();
+        for (Waiter waiter : waiters) {
+            if (waiter.source != null) {
+                for (DeviceId destination : waiter.destinations) {
+                    edges.computeIfAbsent(waiter.source, d -> new TreeMap<>()).merge(destination, 1, Integer::sum);
+                }
+            }
+        }
+        return edges;
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"devices\":[");
+        for (int i = 0; i < devices.size(); ++i) {
+            Device device = devices.get(i);
+            json.append(i > 0 ? "," : "")
+                    .append("{\"id\":").append(device.device.getId())
+                    .append(",\"totalSlots\":").append(device.totalSlots)
+                    .append(",\"occupiedSlots\":").append(device.occupiedSlots)
+                    .append(",\"beingFreeSlots\":").append(device.beingFreeSlots)
+                    .append(",\"handoffSlots\":").append(device.handoffSlots)
+                    .append(",\"queueLength\":").append(device.queueLength).append('}');
+        }
+        json.append("],\"edges\":[");
+        boolean first = true;
+        for (Map.Entry<DeviceId, Map<DeviceId, Integer>> from : getEdges().entrySet()) {
+            for (Map.Entry<DeviceId, Integer> to : from.getValue().entrySet()) {
+                json.append(first ? "" : ",")
+                        .append("{\"from\":").append(from.getKey().getId())
+                        .append(",\"to\":").append(to.getKey().getId())
+                        .append(",\"waiters\":").append(to.getValue()).append('}');
+                first = false;
+            }
+        }
+        json.append("],\"waiters\":[");
+        for (int i = 0; i < waiters.size(); ++i) {
+            Waiter waiter = waiters.get(i);
+            json.append(i > 0 ? "," : "")
+                    .append("{\"component\":").append(waiter.component.getId())
+                    .append(",\"source\":").append(waiter.source == null ? "null" : waiter.source.getId())
+                    .append(",\"destinations\":[");
+            for (int j = 0; j < waiter.destinations.size(); ++j) {
+                json.append(j > 0 ? "," : "").append(waiter.destinations.get(j).getId());
+            }
+            json.append("],\"kind\":\"").append(waiter.kind)
+                    .append("\",\"holder\":").append(waiter.holder == null ? "null" : waiter.holder.getId())
+                    .append(",\"waitedMillis\":").append(waiter.getWaitedMillis()).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    public String toDot() {
+        StringBuilder dot = new StringBuilder("digraph waits {\n");
+        for (Device device : devices) {
+            dot.append("  \"").append(device.device).append("\" [label=\"").append(device.device)
+                    .append("\\n").append(device.occupiedSlots).append('/').append(device.totalSlots)
+                    .append(" q=").append(device.queueLength).append("\"];\n");
+        }
+        for (Map.Entry<DeviceId, Map<DeviceId, Integer>> from : getEdges().entrySet()) {
+            for (Map.Entry<DeviceId, Integer> to : from.getValue().entrySet()) {
+                dot.append("  \"").append(from.getKey()).append("\" -> \"").append(to.getKey())
+                        .append("\" [label=\"").append(to.getValue()).append("\"];\n");
+            }
+        }
+        return dot.append("}\n").toString();
+    }
+}
@@ -0,0 +1,274 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.ReroutableTransfer;
+import cp2023.exceptions.ComponentDoesNotNeedTransfer;
+import cp2023.exceptions.DeviceOverloaded;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.AdmissionControl;
+import cp2023.solution.DeviceLoad;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.HashMap;
+import java.util.List;
+
+public class AdmissionControlTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(3);
+        deviceCapacities.put(dev1, 1);
+        deviceCapacities.put(dev2, 1);
+        deviceCapacities.put(dev3, 1);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev3 = new DeviceId(3);
+
+        // One waiter per queue, the second one waits outside it until the first is served
+        system.setAdmissionControl(new AdmissionControl(1, 0, AdmissionControl.OverloadPolicy.WAIT));
+        Thread queued = new Thread(() -> executeTransfer(system, 103, 0, 1, 10));
+        Thread admitted = new Thread(() -> executeTransfer(system, 104, 0, 1, 10));
+        queued.start();
+        sleep(20);
+        admitted.start();
+        sleep(20);
+        if (queueLength(system, dev1) != 1) {
+            failure = "Queue limit not respected: " + queueLength(system, dev1);
+        }
+        executeTransfer(system, 101, 1, 0, 10);
+        join(queued);
+        executeTransfer(system, 103, 1, 0, 10);
+        join(admitted);
+        if (!isPlaced(system, 104, dev1)) {
+            failure = "Admitted transfer did not complete";
+        }
+
+        // Overloaded destination, a reroutable transfer goes to its alternative, others are rejected
+        system.setAdmissionControl(new AdmissionControl(1, 0, AdmissionControl.OverloadPolicy.TRY_ALTERNATIVE));
+        Thread waiting = new Thread(() -> executeTransfer(system, 105, 0, 1, 10));
+        waiting.start();
+        sleep(20);
+        try {
+            system.execute(new ReroutableTransfImpl(new ComponentId(106), null, dev1, List.of(dev1, dev3), 10));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        if (!isPlaced(system, 106, dev3)) {
+            failure = "Reroutable transfer not sent to its alternative";
+        }
+        try {
+            system.execute(new CompTransfImpl(new ComponentId(107), null, dev1, 10));
+            failure = "Transfer to an overloaded device accepted";
+        } catch (DeviceOverloaded e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        executeTransfer(system, 104, 1, 0, 10);
+        join(waiting);
+
+        // Lifting the limit lets a transfer waiting for admission into the queue without anyone leaving it
+        StorageSystemImp lifted = setupSystem();
+        lifted.setAdmissionControl(new AdmissionControl(1, 0, AdmissionControl.OverloadPolicy.WAIT));
+        Thread first = new Thread(() -> executeTransfer(lifted, 103, 0, 1, 10));
+        Thread parked = new Thread(() -> executeTransfer(lifted, 104, 0, 1, 10));
+        first.start();
+        sleep(20);
+        parked.start();
+        sleep(20);
+        lifted.setAdmissionControl(null);
+        sleep(20);
+        if (queueLength(lifted, dev1) != 2) {
+            failure = "Waiter not admitted after lifting the limit: " + queueLength(lifted, dev1) + " queued";
+        }
+        executeTransfer(lifted, 101, 1, 0, 10);
+        join(first);
+        executeTransfer(lifted, 103, 1, 0, 10);
+        join(parked);
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static int queueLength(StorageSystemImp system, DeviceId device) {
+        for (DeviceLoad load : system.snapshotLoad()) {
+            if (load.getDeviceId().equals(device)) {
+                return load.getQueueLength();
+            }
+        }
+        return -1;
+    }
+
+    private final static class ReroutableTransfImpl implements ReroutableTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private volatile DeviceId dstDevId;
+        private final List<DeviceId> alternatives;
+        private final long duration;
+
+        public ReroutableTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId,
+                                    List<DeviceId> alternatives, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.alternatives = alternatives;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public List<DeviceId> getAlternativeDestinationIds() {
+            return this.alternatives;
+        }
+
+        @Override
+        public void reroute(DeviceId destination) {
+            this.dstDevId = destination;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    // Only the device holding a component can be both source and destination of its transfer
+    private static boolean isPlaced(StorageSystemImp system, int compId, DeviceId device) {
+        try {
+            system.execute(new CompTransfImpl(new ComponentId(compId), device, device, 0));
+        } catch (ComponentDoesNotNeedTransfer e) {
+            return true;
+        } catch (TransferException e) {
+            return false;
+        }
+        return false;
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,299 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.ComponentDoesNotNeedTransfer;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class CombiningStressTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+        DeviceId dev4 = new DeviceId(4);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+        ComponentId comp3 = new ComponentId(103);
+        ComponentId comp4 = new ComponentId(104);
+        ComponentId comp5 = new ComponentId(105);
+        ComponentId comp6 = new ComponentId(106);
+        ComponentId comp7 = new ComponentId(107);
+        ComponentId comp8 = new ComponentId(108);
+        ComponentId comp9 = new ComponentId(109);
+        ComponentId comp10 = new ComponentId(110);
+        ComponentId comp11 = new ComponentId(111);
+        ComponentId comp12 = new ComponentId(112);
+        ComponentId comp13 = new ComponentId(113);
+        ComponentId comp14 = new ComponentId(114);
+        ComponentId comp15 = new ComponentId(115);
+        ComponentId comp16 = new ComponentId(116);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(4);
+        deviceCapacities.put(dev1, 16);
+        deviceCapacities.put(dev2, 16);
+        deviceCapacities.put(dev3, 16);
+        deviceCapacities.put(dev4, 16);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(16);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+        initialComponentMapping.put(comp3, dev3);
+        initialComponentMapping.put(comp4, dev4);
+        initialComponentMapping.put(comp5, dev1);
+        initialComponentMapping.put(comp6, dev2);
+        initialComponentMapping.put(comp7, dev3);
+        initialComponentMapping.put(comp8, dev4);
+        initialComponentMapping.put(comp9, dev1);
+        initialComponentMapping.put(comp10, dev2);
+        initialComponentMapping.put(comp11, dev3);
+        initialComponentMapping.put(comp12, dev4);
+        initialComponentMapping.put(comp13, dev1);
+        initialComponentMapping.put(comp14, dev2);
+        initialComponentMapping.put(comp15, dev3);
+        initialComponentMapping.put(comp16, dev4);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        system.setCombining(true);
+
+        // In every round all performs end together, then the system goes quiet until each caller has returned,
+        // so a completion the combiner misses is not rescued by later traffic
+        for (int round = 1; round <= ROUNDS && failure == null; ++round) {
+            CyclicBarrier together = new CyclicBarrier(MOVERS + ADDERS);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < MOVERS; ++i) {
+                int compId = 101 + i;
+                int src = (i + round - 1) % 4 + 1;
+                int dst = (i + round) % 4 + 1;
+                threads.add(new Thread(() -> timedTransfer(system, compId, src, dst, together)));
+            }
+            for (int i = 0; i < ADDERS; ++i) {
+                int compId = 1000 + i;
+                int dev = i % 4 + 1;
+                boolean add = round % 2 == 1;
+                threads.add(new Thread(() -> timedTransfer(system, compId, add ? 0 : dev, add ? dev : 0, together)));
+            }
+            for (Thread t : threads) {
+                t.setDaemon(true);// A lost completion must not keep the test from reporting it
+                t.start();
+            }
+            for (Thread t : threads) {
+                joinWithin(t, 5_000);
+                if (t.isAlive()) {
+                    throw new RuntimeException("Completion lost, transfer never returned");
+                }
+            }
+        }
+
+        for (int i = 0; i < MOVERS; ++i) {
+            DeviceId expected = new DeviceId((i + ROUNDS) % 4 + 1);
+            if (!isPlaced(system, 101 + i, expected)) {
+                failure = "Component " + (101 + i) + " not on " + expected;
+            }
+        }
+        for (int i = 0; i < ADDERS; ++i) {
+            for (int dev = 1; dev <= 4; ++dev) {
+                if (isPlaced(system, 1000 + i, new DeviceId(dev))) {
+                    failure = "Removed component " + (1000 + i) + " still placed";
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static final int MOVERS = 16;
+    private static final int ADDERS = 8;
+    private static final int ROUNDS = 20;
+    private static final long MAX_COMPLETION_MILLIS = 1000;
+
+    private static void timedTransfer(StorageSystemImp system, int compId, int srcDevId, int dstDevId,
+            CyclicBarrier together) {
+        BarrierTransfImpl transfer = new BarrierTransfImpl(new ComponentId(compId),
+                srcDevId > 0 ? new DeviceId(srcDevId) : null, dstDevId > 0 ? new DeviceId(dstDevId) : null, together);
+        try {
+            system.execute(transfer);
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        long elapsed = System.currentTimeMillis() - transfer.performed;
+        if (elapsed > MAX_COMPLETION_MILLIS) {
+            failure = "Completion of " + compId + " delayed by " + elapsed + " ms";
+        }
+    }
+
+    private static void joinWithin(Thread thread, long millis) {
+        try {
+            thread.join(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class BarrierTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final CyclicBarrier barrier;
+        private long performed;
+
+        public BarrierTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, CyclicBarrier barrier) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.barrier = barrier;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            try {
+                barrier.await(5, TimeUnit.SECONDS);
+            } catch (TimeoutException | BrokenBarrierException e) {
+                failure = "Performs did not run concurrently";
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+            performed = System.currentTimeMillis();
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    // Only the device holding a component can be both source and destination of its transfer
+    private static boolean isPlaced(StorageSystemImp system, int compId, DeviceId device) {
+        try {
+            system.execute(new CompTransfImpl(new ComponentId(compId), device, device, 0));
+        } catch (ComponentDoesNotNeedTransfer e) {
+            return true;
+        } catch (TransferException e) {
+            return false;
+        }
+        return false;
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,174 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.DeviceDecommissioned;
+import cp2023.exceptions.DeviceDoesNotExist;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
+public class DeviceResizeTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, 1);
+        deviceCapacities.put(dev2, 1);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        // Queued on a full device, woken by growing it
+        Thread adder = new Thread(() -> executeTransfer(system, 103, 0, 1, 10));
+        adder.start();
+        sleep(20);
+        system.resizeDevice(dev1, 3);
+        join(adder);
+
+        // Queued inbound transfers are rejected by decommissioning
+        Thread rejected = new Thread(() -> {
+            try {
+                system.execute(new CompTransfImpl(new ComponentId(104), null, dev2, 10));
+                failure = "Transfer to a decommissioned device succeeded";
+            } catch (DeviceDecommissioned e) {
+                // expected
+            } catch (TransferException e) {
+                failure = "Unexpected transfer exception: " + e.toString();
+            }
+        });
+        rejected.start();
+        sleep(20);
+        CompletableFuture<Void> drained = system.decommissionDevice(dev2);
+        join(rejected);
+        if (drained.isDone()) {
+            failure = "Device with a component reported as drained";
+        }
+
+        executeTransfer(system, 102, 2, 1, 10);
+        if (!drained.isDone()) {
+            failure = "Empty decommissioned device not reported as drained";
+        }
+        try {
+            system.execute(new CompTransfImpl(new ComponentId(105), null, dev2, 10));
+            failure = "Transfer to a removed device succeeded";
+        } catch (DeviceDoesNotExist e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,210 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.DeviceLoad;
+import cp2023.solution.Evacuation;
+import cp2023.solution.EvacuationPolicy;
+import cp2023.solution.Evacuator;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class EvacuationTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, 3);
+        deviceCapacities.put(dev2, 4);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev1);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        // One component is busy and one arrives while the evacuation starts, both have to leave too
+        Thread busy = new Thread(() -> executeTransfer(system, 102, 1, 0, 0));
+        Thread inbound = new Thread(() -> executeTransfer(system, 103, 0, 1, 50));
+        busy.start();
+        inbound.start();
+        sleep(10);
+        Evacuator evacuator = new Evacuator(system, (component, source, destination) ->
+                new CompTransfImpl(component, source, destination, 10));
+        Evacuation evacuation = evacuator.evacuate(dev1, new EvacuationPolicy(2, true));
+        try {
+            evacuation.getCompletion().get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            failure = "Evacuation did not complete: " + e;
+        }
+        join(busy);
+        join(inbound);
+        if (!dev2.equals(system.getPlacement(new ComponentId(101)))
+                || !dev2.equals(system.getPlacement(new ComponentId(103)))) {
+            failure = "Component left on the evacuated device";
+        }
+        if (evacuation.getRemainingComponents() != 0) {
+            failure = "Evacuation reports " + evacuation.getRemainingComponents() + " remaining components";
+        }
+        for (DeviceLoad load : system.snapshotLoad()) {// Reserved slots count as occupied
+            if (load.getDeviceId().equals(dev2) && load.getOccupiedSlots() != 2) {
+                failure = "Slots of " + dev2 + " still reserved after the evacuation";
+            }
+        }
+
+        // Without decommissioning the device keeps taking transfers, the evacuation ends once the components
+        // it started with are gone
+        StorageSystemImp open = setupSystem();
+        AtomicBoolean evacuated = new AtomicBoolean();
+        executeTransfer(open, 200, 0, 1, 0);
+        Thread traffic = new Thread(() -> {
+            for (int i = 200; !evacuated.get(); ++i) {// Always one of them on the device, unless evacuated meanwhile
+                tryTransfer(open, i + 1, 0, 1, 5);
+                tryTransfer(open, i, 1, 0, 5);
+            }
+        });
+        traffic.start();
+        Evacuation partial = new Evacuator(open, (component, source, destination) ->
+                new CompTransfImpl(component, source, destination, 10)).evacuate(dev1, new EvacuationPolicy(2, false));
+        try {
+            partial.getCompletion().get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            failure = "Evacuation under traffic did not complete: " + e;
+        }
+        evacuated.set(true);
+        join(traffic);
+        if (!dev2.equals(open.getPlacement(new ComponentId(101)))
+                || !dev2.equals(open.getPlacement(new ComponentId(102)))) {
+            failure = "Component left on the device evacuated under traffic";
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    // Traffic racing the evacuation, which may have moved the component already
+    private final static void tryTransfer(StorageSystemImp system, int compId, int srcDevId, int dstDevId,
+                                          long duration) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            // ignored
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
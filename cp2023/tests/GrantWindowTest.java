@@ -0,0 +1,270 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.DurationModel;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+public class GrantWindowTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+        DeviceId dev4 = new DeviceId(4);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(201);
+        ComponentId comp3 = new ComponentId(202);
+        ComponentId comp4 = new ComponentId(203);
+        ComponentId comp5 = new ComponentId(301);
+        ComponentId comp6 = new ComponentId(302);
+        ComponentId comp7 = new ComponentId(303);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(4);
+        deviceCapacities.put(dev1, 1);
+        deviceCapacities.put(dev2, 4);
+        deviceCapacities.put(dev3, 4);
+        deviceCapacities.put(dev4, 8);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(7);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+        initialComponentMapping.put(comp3, dev2);
+        initialComponentMapping.put(comp4, dev2);
+        initialComponentMapping.put(comp5, dev3);
+        initialComponentMapping.put(comp6, dev3);
+        initialComponentMapping.put(comp7, dev3);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+        DeviceId dev4 = new DeviceId(4);
+        system.setDurationModel(new DurationModel(1.0));
+        system.setGrantWindow(2);
+        performed.clear();
+
+        // Transfers leaving device 2 prepare slowly, leaving device 3 quickly, nothing is known of device 4
+        execute(system, new PrepTransfImpl(202, dev2, dev4, SLOW));
+        execute(system, new PrepTransfImpl(302, dev3, dev4, FAST));
+        performed.clear();
+
+        // Within the window the waiter whose own slot frees sooner is granted first
+        Thread slow = queue(system, new PrepTransfImpl(201, dev2, dev1, SLOW));
+        Thread fast = queue(system, new PrepTransfImpl(301, dev3, dev1, FAST));
+        executeTransfer(system, 101, 1, 0, 0);
+        granted(fast);
+        executeTransfer(system, 301, 1, 0, 0);
+        granted(slow);
+        expectPerformed(List.of(301, 201), "Grant inside the window not ordered by expected release");
+
+        // Only the first window waiters are compared, a faster one further back waits its turn
+        Thread unknown = queue(system, new PrepTransfImpl(202, dev4, dev1, FAST));
+        Thread known = queue(system, new PrepTransfImpl(203, dev2, dev1, SLOW));
+        Thread outside = queue(system, new PrepTransfImpl(303, dev3, dev1, FAST));
+        executeTransfer(system, 201, 1, 0, 0);
+        granted(known);
+        expectPerformed(List.of(203), "Waiter outside the window granted first");
+
+        // Without a window the grants are FIFO again
+        system.setGrantWindow(1);
+        executeTransfer(system, 203, 1, 0, 0);
+        granted(unknown);
+        executeTransfer(system, 202, 1, 0, 0);
+        granted(outside);
+        expectPerformed(List.of(202, 303), "Grants not FIFO without a window");
+
+        if (!dev1.equals(system.getPlacement(new ComponentId(303)))) {
+            failure = "Last waiter not placed";
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static final long SLOW = 50;
+    private static final long FAST = 1;
+
+    private static final List<Integer> performed = Collections.synchronizedList(new ArrayList<>());
+
+    private static void expectPerformed(List<Integer> expected, String message) {
+        synchronized (performed) {
+            if (!performed.equals(expected)) {
+                failure = message + ": " + performed;
+            }
+            performed.clear();
+        }
+    }
+
+    // Starts the transfer and gives it time to join the queue behind those started before
+    private static Thread queue(StorageSystemImp system, ComponentTransfer transfer) {
+        Thread thread = new Thread(() -> execute(system, transfer));
+        thread.setDaemon(true);// A waiter left in the queue must not keep the test from reporting it
+        thread.start();
+        sleep(20);
+        return thread;
+    }
+
+    private static void granted(Thread waiter) {
+        try {
+            waiter.join(5_000);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+        if (waiter.isAlive()) {
+            throw new RuntimeException("Expected waiter not granted: " + performed);
+        }
+    }
+
+    private static void execute(StorageSystemImp system, ComponentTransfer transfer) {
+        try {
+            system.execute(transfer);
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static class PrepTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long prepareDuration;
+
+        public PrepTransfImpl(int compId, DeviceId srcDevId, DeviceId dstDevId, long prepareDuration) {
+            this.compId = new ComponentId(compId);
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.prepareDuration = prepareDuration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            sleep(this.prepareDuration);
+        }
+
+        @Override
+        public void perform() {
+            performed.add(this.compId.getId());
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
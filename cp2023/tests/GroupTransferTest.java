@@ -0,0 +1,290 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.ComponentIsBeingOperatedOn;
+import cp2023.exceptions.DeviceOverloaded;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+import cp2023.solution.WaitGraph;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+public class GroupTransferTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, 3);
+        deviceCapacities.put(dev2, 2);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        // Enough free slots, both members run at once: each performs only once the other is performing too
+        CyclicBarrier together = new CyclicBarrier(2);
+        executeGroup(system, List.of(new BarrierTransfImpl(new ComponentId(103), dev1, together),
+                new BarrierTransfImpl(new ComponentId(104), dev1, together)));
+
+        // A full device, the group waits until both of its slots are free
+        Thread group = new Thread(() -> executeGroup(system, List.of(transfer(105, 0, 1), transfer(102, 2, 1))));
+        group.start();
+        sleep(20);
+        executeTransfer(system, 101, 1, 0, DURATION);
+        sleep(20);
+        if (components(system, dev1).contains(new ComponentId(105))) {
+            failure = "Group started with only one slot";
+        }
+        executeTransfer(system, 103, 1, 0, DURATION);
+        join(group);
+        if (!components(system, dev1).equals(Set.of(new ComponentId(104), new ComponentId(105),
+                new ComponentId(102)))) {
+            failure = "Group not moved together: " + components(system, dev1);
+        }
+
+        // An invalid member rejects the whole group
+        try {
+            system.executeGroup(List.of(transfer(107, 0, 2), transfer(104, 1, 2), transfer(104, 1, 2)));
+            failure = "Group with a duplicate member accepted";
+        } catch (IllegalArgumentException e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        Thread blocker = new Thread(() -> executeTransfer(system, 104, 1, 2, 50));
+        blocker.start();
+        sleep(10);
+        try {
+            system.executeGroup(List.of(transfer(107, 0, 2), transfer(104, 1, 2)));
+            failure = "Group with a member being operated on accepted";
+        } catch (ComponentIsBeingOperatedOn e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        join(blocker);
+        executeTransfer(system, 107, 0, 1, DURATION);// Released by the rejected group
+
+        // More members than the device has slots, rejected at once
+        try {
+            system.executeGroup(List.of(transfer(108, 0, 2), transfer(109, 0, 2), transfer(110, 0, 2)));
+            failure = "Group larger than its device accepted";
+        } catch (DeviceOverloaded e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        executeTransfer(system, 108, 0, 2, DURATION);// Released by the rejected group
+
+        // Both devices full, a waiting group swaps places with a single transfer arriving later
+        group = new Thread(() -> executeGroup(system, List.of(transfer(105, 1, 2))));
+        group.start();
+        sleep(20);
+        List<WaitGraph.Waiter> waiters = system.snapshotWaitGraph().getWaiters();
+        if (waiters.size() != 1 || waiters.get(0).getKind() != WaitGraph.Kind.GROUP) {
+            failure = "Waiting group not in the wait graph: " + waiters.size();
+        }
+        executeTransfer(system, 104, 2, 1, DURATION);
+        join(group);
+        if (!components(system, dev2).contains(new ComponentId(105))
+                || !components(system, dev1).contains(new ComponentId(104))) {
+            failure = "Group member and transfer did not swap";
+        }
+
+        // And with a single transfer waiting first
+        Thread single = new Thread(() -> executeTransfer(system, 104, 1, 2, DURATION));
+        single.start();
+        sleep(20);
+        executeGroup(system, List.of(transfer(105, 2, 1)));
+        join(single);
+        if (!components(system, dev1).contains(new ComponentId(105))
+                || !components(system, dev2).contains(new ComponentId(104))) {
+            failure = "Waiting transfer and group member did not swap";
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static final long DURATION = 30;
+
+    private static ComponentTransfer transfer(int compId, int srcDevId, int dstDevId) {
+        return new CompTransfImpl(
+                new ComponentId(compId),
+                srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                DURATION
+        );
+    }
+
+    private static void executeGroup(StorageSystemImp system, List<ComponentTransfer> transfers) {
+        try {
+            system.executeGroup(transfers);
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private static Set<ComponentId> components(StorageSystemImp system, DeviceId device) {
+        Spliterator<ComponentId> scan = system.scanDevice(device);
+        return StreamSupport.stream(scan, false).collect(Collectors.toSet());
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private final static class BarrierTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId dstDevId;
+        private final CyclicBarrier barrier;
+
+        public BarrierTransfImpl(ComponentId compId, DeviceId dstDevId, CyclicBarrier barrier) {
+            this.compId = compId;
+            this.dstDevId = dstDevId;
+            this.barrier = barrier;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return null;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            try {
+                barrier.await(5, TimeUnit.SECONDS);
+            } catch (TimeoutException | BrokenBarrierException e) {
+                failure = "Members of a group did not run in parallel";
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,227 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.MappedPlacementStore;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+public class MappedPlacementStoreTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, 2);
+        deviceCapacities.put(dev2, 2);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev1);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        ComponentId comp = new ComponentId(101);
+        Path file = tempFile();
+
+        // Too small for the devices, refused without leaving the system locked
+        try (MappedPlacementStore small = MappedPlacementStore.open(tempFile(), 2)) {
+            system.attachPlacementStore(small);
+            failure = "Placement store smaller than the devices attached";
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        executeTransfer(system, 102, 1, 2, 0);
+
+        // Additions and removals keep reusing the records of removed components
+        MappedPlacementStore store = MappedPlacementStore.open(file, 8);
+        system.attachPlacementStore(store);
+        for (int c = 200; c < 240; ++c) {
+            executeTransfer(system, c, 0, 2, 0);
+            executeTransfer(system, c, 2, 0, 0);
+        }
+        if (!dev1.equals(store.lookup(comp)) || store.lookup(new ComponentId(239)) != null
+                || !store.readAll().equals(system.snapshotPlacement())) {
+            failure = "Placement store out of date: " + store.readAll();
+        }
+        store.close();
+
+        // A writer that died mid-record leaves it torn, readers skip it and the next writer drops it
+        tear(file, comp);
+        store = MappedPlacementStore.open(file, 8);
+        if (store.lookup(comp) != null || store.readAll().containsKey(comp)) {
+            failure = "Torn record read";
+        }
+        system.attachPlacementStore(store);
+        if (!dev1.equals(store.lookup(comp)) || !store.readAll().equals(system.snapshotPlacement())) {
+            failure = "Placement store not recovered: " + store.readAll();
+        }
+        system.attachPlacementStore(null);
+        store.close();
+
+        // Devices added after attaching can outgrow the store, it is detached and the transfers go on
+        store = MappedPlacementStore.open(tempFile(), 4);
+        system.attachPlacementStore(store);
+        system.addDevice(new DeviceId(3), 4);
+        for (int c = 300; c < 304; ++c) {
+            executeTransfer(system, c, 0, 3, 0);
+        }
+        if (!system.isPlacementStoreFull() || !new DeviceId(3).equals(system.getPlacement(new ComponentId(303)))) {
+            failure = "Full placement store not reported";
+        }
+        store.close();
+        store = MappedPlacementStore.open(tempFile(), 16);
+        system.attachPlacementStore(store);
+        if (system.isPlacementStoreFull() || !store.readAll().equals(system.snapshotPlacement())) {
+            failure = "Placement store not attached again";
+        }
+        system.attachPlacementStore(null);
+        store.close();
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static Path tempFile() {
+        try {
+            Path file = Files.createTempFile("placement", ".store");
+            Files.delete(file);
+            file.toFile().deleteOnExit();
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Record layout: 64 byte header, then 16 byte records of sequence, component, device and flags
+    private static void tear(Path file, ComponentId component) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer record = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            for (long offset = 64; offset < channel.size(); offset += 16) {
+                record.clear();
+                channel.read(record, offset);
+                if (record.getInt(4) == component.getId() && record.getInt(12) == MappedPlacementStore.OCCUPIED) {
+                    record.putInt(0, record.getInt(0) + 1);
+                    record.rewind();
+                    channel.write(record, offset);
+                    return;
+                }
+            }
+            failure = "No record of " + component;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,213 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.MultiDestinationTransfer;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.HashMap;
+import java.util.List;
+
+public class MultiDestinationCycleTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+        ComponentId comp3 = new ComponentId(103);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(3);
+        deviceCapacities.put(dev1, 1);
+        deviceCapacities.put(dev2, 1);
+        deviceCapacities.put(dev3, 1);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(3);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+        initialComponentMapping.put(comp3, dev3);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+
+        // The multi-destination transfer waits on DEV-3 and DEV-1; the cycle through DEV-3 is found
+        // while the search still walks the queue of DEV-1
+        Thread first = new Thread(() -> executeTransfer(system, 103, 3, 1, 10));
+        Thread multi = new Thread(() -> {
+            try {
+                system.execute(new MultiDestTransfImpl(new ComponentId(102), dev2, dev3, List.of(dev1), 10));
+            } catch (TransferException e) {
+                failure = "Unexpected transfer exception: " + e.toString();
+            }
+        });
+        first.start();
+        sleep(20);
+        multi.start();
+        sleep(20);
+        executeTransfer(system, 101, 1, 2, 10);
+        join(first);
+        join(multi);
+        if (!dev2.equals(system.getPlacement(new ComponentId(101)))
+                || !dev3.equals(system.getPlacement(new ComponentId(102)))
+                || !dev1.equals(system.getPlacement(new ComponentId(103)))) {
+            failure = "Cycle not executed: " + system.snapshotPlacement();
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private final static class MultiDestTransfImpl implements MultiDestinationTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private volatile DeviceId dstDevId;
+        private final List<DeviceId> alternatives;
+        private final long duration;
+
+        public MultiDestTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId,
+                                   List<DeviceId> alternatives, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.alternatives = alternatives;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public List<DeviceId> getAlternativeDestinationIds() {
+            return this.alternatives;
+        }
+
+        @Override
+        public void reroute(DeviceId destination) {
+            this.dstDevId = destination;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
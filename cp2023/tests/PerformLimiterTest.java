@@ -0,0 +1,324 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.ComponentDoesNotNeedTransfer;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.PerformLimiter;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PerformLimiterTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+        DeviceId dev4 = new DeviceId(4);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+        ComponentId comp3 = new ComponentId(103);
+        ComponentId comp4 = new ComponentId(104);
+        ComponentId comp5 = new ComponentId(105);
+        ComponentId comp6 = new ComponentId(201);
+        ComponentId comp7 = new ComponentId(202);
+        ComponentId comp8 = new ComponentId(203);
+        ComponentId comp9 = new ComponentId(204);
+        ComponentId comp10 = new ComponentId(205);
+        ComponentId comp11 = new ComponentId(206);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(4);
+        deviceCapacities.put(dev1, 12);
+        deviceCapacities.put(dev2, 12);
+        deviceCapacities.put(dev3, 12);
+        deviceCapacities.put(dev4, 12);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(11);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev1);
+        initialComponentMapping.put(comp3, dev1);
+        initialComponentMapping.put(comp4, dev1);
+        initialComponentMapping.put(comp5, dev1);
+        initialComponentMapping.put(comp6, dev2);
+        initialComponentMapping.put(comp7, dev2);
+        initialComponentMapping.put(comp8, dev2);
+        initialComponentMapping.put(comp9, dev2);
+        initialComponentMapping.put(comp10, dev2);
+        initialComponentMapping.put(comp11, dev2);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+        DeviceId dev4 = new DeviceId(4);
+
+        // At most two performs at once, wherever they go
+        system.setPerformLimiter(new PerformLimiter(2, 0, 0));
+        runConcurrently(system,
+                new CountedTransfImpl(101, dev1, dev3), new CountedTransfImpl(102, dev1, dev3),
+                new CountedTransfImpl(103, dev1, dev4), new CountedTransfImpl(201, dev2, dev3),
+                new CountedTransfImpl(202, dev2, dev4), new CountedTransfImpl(203, dev2, dev4));
+        if (total.max.get() != 2) {
+            failure = "Global limit: " + total.max.get() + " performs at once instead of 2";
+        }
+
+        // One incoming perform per device, the two destinations still run side by side
+        system.setPerformLimiter(new PerformLimiter(0, 1, 0));
+        runConcurrently(system,
+                new CountedTransfImpl(104, dev1, dev3), new CountedTransfImpl(105, dev1, dev3),
+                new CountedTransfImpl(204, dev2, dev3), new CountedTransfImpl(205, dev2, dev4),
+                new CountedTransfImpl(206, dev2, dev4));
+        if (counter(incoming, dev3).max.get() != 1 || counter(incoming, dev4).max.get() != 1) {
+            failure = "Incoming limit exceeded";
+        }
+        if (total.max.get() != 2) {
+            failure = "Incoming limit held back other devices: " + total.max.get() + " performs at once";
+        }
+
+        // One outgoing perform per device, the two sources still run side by side
+        system.setPerformLimiter(new PerformLimiter(0, 0, 1));
+        runConcurrently(system,
+                new CountedTransfImpl(101, dev3, dev1), new CountedTransfImpl(102, dev3, dev1),
+                new CountedTransfImpl(201, dev3, dev2), new CountedTransfImpl(103, dev4, dev1),
+                new CountedTransfImpl(202, dev4, dev2));
+        if (counter(outgoing, dev3).max.get() != 1 || counter(outgoing, dev4).max.get() != 1) {
+            failure = "Outgoing limit exceeded";
+        }
+        if (total.max.get() != 2) {
+            failure = "Outgoing limit held back other devices: " + total.max.get() + " performs at once";
+        }
+
+        // A budget of one transfer per 10 ms on the source, beyond a burst of one
+        PerformLimiter budgeted = new PerformLimiter(0, 0, 0);
+        budgeted.setBandwidth(dev1, 100, 1);
+        system.setPerformLimiter(budgeted);
+        long started = System.nanoTime();
+        runConcurrently(system,
+                new CountedTransfImpl(101, dev1, dev4), new CountedTransfImpl(102, dev1, dev4),
+                new CountedTransfImpl(103, dev1, dev4));
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        if (elapsedMillis < PERFORM_DURATION + 15) {
+            failure = "Bandwidth budget not kept: 3 transfers in " + elapsedMillis + " ms";
+        }
+
+        // Without a limiter everything performs at once
+        system.setPerformLimiter(null);
+        runConcurrently(system,
+                new CountedTransfImpl(101, dev4, dev3), new CountedTransfImpl(102, dev4, dev3),
+                new CountedTransfImpl(103, dev4, dev3));
+        if (total.max.get() != 3) {
+            failure = "Performs limited without a limiter";
+        }
+
+        for (int compId : new int[] {101, 102, 103, 104, 105, 204}) {
+            if (!isPlaced(system, compId, dev3)) {
+                failure = "Component " + compId + " not on " + dev3;
+            }
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static final long PERFORM_DURATION = 30;
+
+    private static volatile Counter total = new Counter();
+    private static final Map<DeviceId, Counter> incoming = new ConcurrentHashMap<>();
+    private static final Map<DeviceId, Counter> outgoing = new ConcurrentHashMap<>();
+
+    private final static class Counter {
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger max = new AtomicInteger();
+
+        void enter() {
+            max.accumulateAndGet(running.incrementAndGet(), Math::max);
+        }
+
+        void leave() {
+            running.decrementAndGet();
+        }
+    }
+
+    private static Counter counter(Map<DeviceId, Counter> counters, DeviceId device) {
+        return counters.computeIfAbsent(device, d -> new Counter());
+    }
+
+    // Starts the transfers together and waits for all of them, counting performs from scratch
+    private static void runConcurrently(StorageSystemImp system, ComponentTransfer... transfers) {
+        total = new Counter();
+        incoming.clear();
+        outgoing.clear();
+        List<Thread> threads = new ArrayList<>();
+        for (ComponentTransfer transfer : transfers) {
+            threads.add(new Thread(() -> {
+                try {
+                    system.execute(transfer);
+                } catch (TransferException e) {
+                    failure = "Unexpected transfer exception: " + e.toString();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        threads.forEach(PerformLimiterTest::join);
+    }
+
+    private final static class CountedTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+
+        public CountedTransfImpl(int compId, DeviceId srcDevId, DeviceId dstDevId) {
+            this.compId = new ComponentId(compId);
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            Counter all = total;
+            all.enter();
+            counter(incoming, dstDevId).enter();
+            counter(outgoing, srcDevId).enter();
+            sleep(PERFORM_DURATION);
+            counter(outgoing, srcDevId).leave();
+            counter(incoming, dstDevId).leave();
+            all.leave();
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    // Only the device holding a component can be both source and destination of its transfer
+    private static boolean isPlaced(StorageSystemImp system, int compId, DeviceId device) {
+        try {
+            system.execute(new CompTransfImpl(new ComponentId(compId), device, device, 0));
+        } catch (ComponentDoesNotNeedTransfer e) {
+            return true;
+        } catch (TransferException e) {
+            return false;
+        }
+        return false;
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
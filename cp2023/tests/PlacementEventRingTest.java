@@ -0,0 +1,218 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.PlacementEventRing;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+public class PlacementEventRingTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        ComponentId comp1 = new ComponentId(101);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, 64);
+        deviceCapacities.put(dev2, 64);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(1);
+
+        initialComponentMapping.put(comp1, dev1);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        // Readers poll while writers complete transfers, each sees every event once and in order
+        PlacementEventRing ring = system.enablePlacementEvents(64);
+        Thread[] readers = new Thread[2];
+        for (int r = 0; r < readers.length; ++r) {
+            PlacementEventRing.Subscription subscription = ring.subscribe();
+            readers[r] = new Thread(() -> readEvents(subscription, WRITERS * ADDS_PER_WRITER));
+        }
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < writers.length; ++w) {
+            int first = 200 + w * ADDS_PER_WRITER;
+            writers[w] = new Thread(() -> {
+                for (int c = first; c < first + ADDS_PER_WRITER; ++c) {
+                    executeTransfer(system, c, 0, 1 + c % 2, 0);
+                }
+            });
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            join(writer);
+        }
+        for (Thread reader : readers) {
+            join(reader);
+        }
+
+        // A lapped reader is told how many events it lost and continues with the newest ones
+        StorageSystemImp small = setupSystem();
+        PlacementEventRing.Subscription lapped = small.enablePlacementEvents(4).subscribe();
+        for (int c = 200; c < 210; ++c) {
+            executeTransfer(small, c, 0, 2, 0);
+        }
+        long[] lost = new long[1];
+        int[] delivered = new int[1];
+        lapped.poll(new PlacementEventRing.Handler() {
+            @Override
+            public void onEvent(long sequence, PlacementEventRing.Type type, ComponentId component,
+                                DeviceId source, DeviceId destination) {
+                if (!component.equals(new ComponentId((int) (200 + sequence)))) {
+                    failure = "Event " + sequence + " is about " + component;
+                }
+                delivered[0]++;
+            }
+
+            @Override
+            public void onOverflow(long lostEvents) {
+                lost[0] += lostEvents;
+            }
+        }, 100);
+        if (lost[0] != 6 || delivered[0] != 4) {
+            failure = "Lapped reader lost " + lost[0] + " and got " + delivered[0] + " events";
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static final int WRITERS = 4;
+    private static final int ADDS_PER_WRITER = 8;
+
+    private static void readEvents(PlacementEventRing.Subscription subscription, int expected) {
+        Set<ComponentId> added = new HashSet<>();
+        long[] next = {subscription.getCursor()};
+        long deadline = System.currentTimeMillis() + 5000;
+        PlacementEventRing.Handler handler = new PlacementEventRing.Handler() {
+            @Override
+            public void onEvent(long sequence, PlacementEventRing.Type type, ComponentId component,
+                                DeviceId source, DeviceId destination) {
+                if (sequence != next[0]++ || type != PlacementEventRing.Type.ADDED || source != null
+                        || destination == null || !added.add(component)) {
+                    failure = "Unexpected event " + sequence + " " + type + " " + component;
+                }
+            }
+
+            @Override
+            public void onOverflow(long lostEvents) {
+                failure = "Reader lost " + lostEvents + " events";
+            }
+        };
+        while (added.size() < expected && System.currentTimeMillis() < deadline) {
+            if (subscription.poll(handler, 3) == 0) {
+                Thread.yield();
+            }
+        }
+        if (added.size() != expected) {
+            failure = "Reader got " + added.size() + " of " + expected + " events";
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
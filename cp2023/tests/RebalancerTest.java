@@ -0,0 +1,189 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.DeviceLoad;
+import cp2023.solution.Rebalancer;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+import cp2023.solution.Topology;
+
+import java.util.HashMap;
+
+public class RebalancerTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+        ComponentId comp3 = new ComponentId(103);
+        ComponentId comp4 = new ComponentId(104);
+        ComponentId comp5 = new ComponentId(105);
+        ComponentId comp6 = new ComponentId(106);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(3);
+        deviceCapacities.put(dev1, 6);
+        deviceCapacities.put(dev2, 6);
+        deviceCapacities.put(dev3, 6);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(6);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev1);
+        initialComponentMapping.put(comp3, dev1);
+        initialComponentMapping.put(comp4, dev1);
+        initialComponentMapping.put(comp5, dev1);
+        initialComponentMapping.put(comp6, dev1);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        // Every round fails while the topology throws, the failures are counted and rounds keep coming
+        system.setTopology(new Topology() {
+            @Override
+            public double cost(DeviceId source, DeviceId destination) {
+                throw new IllegalStateException("broken topology");
+            }
+        });
+        Rebalancer rebalancer = new Rebalancer(system,
+                (component, source, destination) -> new CompTransfImpl(component, source, destination, 5), 2, 5, 0.2);
+        rebalancer.start();
+        sleep(50);
+        long failedRounds = rebalancer.getFailedRounds();
+        if (failedRounds < 2 || !(rebalancer.getLastRoundFailure() instanceof IllegalStateException)) {
+            failure = "Failed rounds not reported: " + failedRounds + ", " + rebalancer.getLastRoundFailure();
+        }
+        if (rebalancer.getCompletedMoves() != 0) {
+            failure = "Moves completed by failing rounds";
+        }
+
+        // Once the topology is gone, the rounds even out the devices. A mover counts its move only after
+        // execute returns, which may be after the devices already look balanced.
+        system.setTopology(null);
+        for (int i = 0; i < 100 && (!balanced(system) || rebalancer.getCompletedMoves() < 4); ++i) {
+            sleep(10);
+        }
+        rebalancer.stop();
+        if (!balanced(system)) {
+            failure = "Devices not balanced after the rebalancing rounds";
+        }
+        if (rebalancer.getCompletedMoves() != 4 || rebalancer.getFailedMoves() != 0) {
+            failure = "Rebalancer made " + rebalancer.getCompletedMoves() + " moves, "
+                    + rebalancer.getFailedMoves() + " failed, instead of 4";
+        }
+        if (rebalancer.getFailedRounds() > failedRounds + 1) {// One round may have read the old topology
+            failure = "Rounds failed after the topology was fixed";
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    // Two components on each device, none of them moving
+    private static boolean balanced(StorageSystemImp system) {
+        for (DeviceLoad load : system.snapshotLoad()) {
+            if (load.getOccupiedSlots() != 2 || load.getIdleComponents().size() != 2) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,266 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.DeviceLoad;
+import cp2023.solution.DurationModel;
+import cp2023.solution.Reconciler;
+import cp2023.solution.ReconciliationPlan;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ReconcilerTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+        DeviceId dev4 = new DeviceId(4);
+        DeviceId dev5 = new DeviceId(5);
+        DeviceId dev6 = new DeviceId(6);
+        DeviceId dev7 = new DeviceId(7);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+        ComponentId comp3 = new ComponentId(103);
+        ComponentId comp4 = new ComponentId(104);
+        ComponentId comp5 = new ComponentId(105);
+        ComponentId comp6 = new ComponentId(107);
+        ComponentId comp7 = new ComponentId(109);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(7);
+        deviceCapacities.put(dev1, 1);
+        deviceCapacities.put(dev2, 1);
+        deviceCapacities.put(dev3, 1);
+        deviceCapacities.put(dev4, 1);
+        deviceCapacities.put(dev5, 1);
+        deviceCapacities.put(dev6, 2);
+        deviceCapacities.put(dev7, 1);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(7);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+        initialComponentMapping.put(comp3, dev3);
+        initialComponentMapping.put(comp4, dev4);
+        initialComponentMapping.put(comp5, dev5);
+        initialComponentMapping.put(comp6, dev6);
+        initialComponentMapping.put(comp7, dev7);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        system.setDurationModel(new DurationModel(0.5));
+        Map<ComponentId, DeviceId> target = new HashMap<>();
+        // A 3-cycle and a swap between full devices
+        target.put(new ComponentId(101), new DeviceId(2));
+        target.put(new ComponentId(102), new DeviceId(3));
+        target.put(new ComponentId(103), new DeviceId(1));
+        target.put(new ComponentId(104), new DeviceId(5));
+        target.put(new ComponentId(105), new DeviceId(4));
+        // An addition into the slot a removal of 107 leaves, and a component that stays
+        target.put(new ComponentId(106), new DeviceId(6));
+        target.put(new ComponentId(109), new DeviceId(7));
+        // Targets that cannot be reached: a full device, an unknown one and none at all
+        target.put(new ComponentId(108), new DeviceId(7));
+        target.put(new ComponentId(110), new DeviceId(99));
+        target.put(new ComponentId(111), null);
+
+        Reconciler reconciler = new Reconciler(system,
+                (component, source, destination) -> new CompTransfImpl(component, source, destination, 10), 2, 1000);
+        ReconciliationPlan plan = reconciler.plan(target);
+        Set<ComponentId> unschedulable = Set.of(new ComponentId(108), new ComponentId(110), new ComponentId(111));
+        if (!plan.getUnschedulable().equals(unschedulable)) {
+            failure = "Unschedulable targets reported as " + plan.getUnschedulable();
+        }
+        int inCycle = 0;
+        for (List<ReconciliationPlan.Step> wave : plan.getWaves()) {
+            for (ReconciliationPlan.Step step : wave) {
+                if (step.isInCycle()) {
+                    inCycle++;
+                }
+            }
+        }
+        if (inCycle != 5 || plan.getTransferCount() != 7) {
+            failure = "Plan has " + plan.getTransferCount() + " transfers, " + inCycle + " of them in cycles";
+        }
+
+        executePlan(system, reconciler, plan, new HashMap<>());
+
+        for (Map.Entry<ComponentId, DeviceId> entry : target.entrySet()) {
+            DeviceId expected = unschedulable.contains(entry.getKey()) ? null : entry.getValue();
+            if (expected == null ? system.getPlacement(entry.getKey()) != null
+                    : !expected.equals(system.getPlacement(entry.getKey()))) {
+                failure = "Component " + entry.getKey() + " on " + system.getPlacement(entry.getKey());
+            }
+        }
+        if (system.getPlacement(new ComponentId(107)) != null) {
+            failure = "Component missing from the target not removed";
+        }
+
+        // Going back over the same devices, the model knows every phase: the dry run predicts the run,
+        // and nothing waits in a device queue
+        Map<ComponentId, DeviceId> initial = new HashMap<>();
+        for (int compId : new int[] {101, 102, 103, 104, 105}) {
+            initial.put(new ComponentId(compId), new DeviceId(compId - 100));
+        }
+        initial.put(new ComponentId(107), new DeviceId(6));
+        initial.put(new ComponentId(109), new DeviceId(7));
+        ReconciliationPlan back = reconciler.plan(initial);
+        Map<DeviceId, Integer> observedDepths = new HashMap<>();
+        long start = System.nanoTime();
+        executePlan(system, reconciler, back, observedDepths);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        for (Map.Entry<DeviceId, Integer> observed : observedDepths.entrySet()) {
+            if (observed.getValue() > 0) {
+                failure = "Queue of " + observed.getValue() + " at " + observed.getKey();
+            }
+        }
+        long estimated = back.getEstimatedMillis();
+        if (estimated > elapsedMillis * 3 / 2 || estimated * 4 < elapsedMillis) {
+            failure = "Reconciliation estimated at " + estimated + " ms took " + elapsedMillis + " ms";
+        }
+        if (!system.snapshotPlacement().equals(initial)) {
+            failure = "Placement not brought back: " + system.snapshotPlacement();
+        }
+
+        reconciler.close();
+        try {
+            reconciler.execute(plan);
+            failure = "Plan executed after closing the reconciler";
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    // Samples the device queues while the plan runs
+    private final static void executePlan(
+            StorageSystemImp system,
+            Reconciler reconciler,
+            ReconciliationPlan plan,
+            Map<DeviceId, Integer> observedDepths
+    ) {
+        List<TransferException> failures = new ArrayList<>();
+        Thread reconciling = new Thread(() -> failures.addAll(reconciler.execute(plan)));
+        reconciling.setDaemon(true);// A wedged rotation must not keep the test from reporting it
+        reconciling.start();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (reconciling.isAlive() && System.currentTimeMillis() < deadline) {
+            for (DeviceLoad load : system.snapshotLoad()) {
+                observedDepths.merge(load.getDeviceId(), load.getQueueLength(), Math::max);
+            }
+            sleep(1);
+        }
+        if (reconciling.isAlive()) {
+            throw new RuntimeException("Reconciliation did not finish");
+        }
+        if (!failures.isEmpty()) {
+            failure = "Unexpected transfer exception: " + failures.get(0);
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,273 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.MultiDestinationTransfer;
+import cp2023.exceptions.ComponentAlreadyExists;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.ReplicatedStorageSystem;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ReplicatedStorageSystemTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+
+        ComponentId comp1 = new ComponentId(101);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(3);
+        deviceCapacities.put(dev1, 2);
+        deviceCapacities.put(dev2, 2);
+        deviceCapacities.put(dev3, 2);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(1);
+
+        initialComponentMapping.put(comp1, dev1);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+        ComponentId comp = new ComponentId(101);
+        ReplicatedStorageSystem replicated = new ReplicatedStorageSystem(system, 2);
+
+        // More replicas than devices cannot be kept
+        for (int maxReplicas : new int[] {0, 4}) {
+            try {
+                new ReplicatedStorageSystem(system, maxReplicas);
+                failure = "Limit of " + maxReplicas + " replicas accepted for 3 devices";
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        // Existing components are their own replica
+        expectReplicas(replicated, comp, dev1);
+
+        // Add a replica, a second one on the same device is refused
+        replicate(replicated, new CompTransfImpl(comp, null, dev2, 10));
+        expectReplicas(replicated, comp, dev1, dev2);
+        try {
+            replicated.execute(new CompTransfImpl(comp, null, dev2, 10));
+            failure = "Second replica on one device accepted";
+        } catch (ComponentAlreadyExists e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        try {
+            replicated.execute(new CompTransfImpl(comp, null, dev3, 10));
+            failure = "Replica beyond the limit accepted";
+        } catch (ComponentAlreadyExists e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+
+        // Move and remove single replicas
+        replicate(replicated, new CompTransfImpl(comp, dev2, dev3, 10));
+        expectReplicas(replicated, comp, dev1, dev3);
+        replicate(replicated, new CompTransfImpl(comp, dev1, null, 10));
+        expectReplicas(replicated, comp, dev3);
+        if (system.getPlacement(comp) != null) {
+            failure = "Removed replica still in the underlying system";
+        }
+
+        // A multi-destination replica goes around a full device, but not to one that already has a replica
+        replicate(replicated, new CompTransfImpl(new ComponentId(102), null, dev2, 10));
+        replicate(replicated, new CompTransfImpl(new ComponentId(103), null, dev2, 10));
+        MultiDestTransfImpl spread = new MultiDestTransfImpl(comp, null, dev2, List.of(dev3, dev1), 10);
+        Thread spreading = new Thread(() -> replicate(replicated, spread));
+        spreading.start();
+        join(spreading);
+        if (!dev1.equals(spread.getDestinationDeviceId())) {
+            failure = "Multi-destination replica sent to " + spread.getDestinationDeviceId();
+        }
+        expectReplicas(replicated, comp, dev1, dev3);
+
+        try {
+            replicated.execute(new CompTransfImpl(new ComponentId(-1), null, dev1, 10));
+            failure = "Component with a negative id accepted";
+        } catch (IllegalArgumentException e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static void replicate(ReplicatedStorageSystem replicated, ComponentTransfer transfer) {
+        try {
+            replicated.execute(transfer);
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private static void expectReplicas(ReplicatedStorageSystem replicated, ComponentId component, DeviceId... devices) {
+        Set<DeviceId> located = new HashSet<>(replicated.locate(component));
+        if (!located.equals(new HashSet<>(List.of(devices)))) {
+            failure = "Replicas of " + component + " on " + located;
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    // Bounded, a transfer that lost its alternatives waits for the full device forever
+    private final static void join(Thread thread) {
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+        if (thread.isAlive()) {
+            throw new RuntimeException("Replica transfer still waiting for a slot");
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private final static class MultiDestTransfImpl implements MultiDestinationTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private volatile DeviceId dstDevId;
+        private final List<DeviceId> alternatives;
+        private final long duration;
+
+        public MultiDestTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId,
+                                   List<DeviceId> alternatives, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.alternatives = alternatives;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public List<DeviceId> getAlternativeDestinationIds() {
+            return this.alternatives;
+        }
+
+        @Override
+        public void reroute(DeviceId destination) {
+            this.dstDevId = destination;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
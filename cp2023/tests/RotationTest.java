@@ -0,0 +1,206 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RotationTest {
+
+    private static final Set<ComponentId> prepared = ConcurrentHashMap.newKeySet();
+    private static final Set<ComponentId> performed = ConcurrentHashMap.newKeySet();
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+        ComponentId comp3 = new ComponentId(103);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(3);
+        deviceCapacities.put(dev1, 1);
+        deviceCapacities.put(dev2, 1);
+        deviceCapacities.put(dev3, 1);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(3);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+        initialComponentMapping.put(comp3, dev3);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        prepared.clear();
+        performed.clear();
+        StorageSystemImp system = setupSystem();
+
+        try {
+            // Each device is full, the transfers only work together
+            system.rotate(List.of(
+                    new CompTransfImpl(101, 1, 2, 102),
+                    new CompTransfImpl(102, 2, 3, 103),
+                    new CompTransfImpl(103, 3, 1, 101)
+            ));
+            prepared.clear();
+            system.swap(new CompTransfImpl(101, 2, 3, 102), new CompTransfImpl(102, 3, 2, 101));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        if (!new DeviceId(3).equals(system.getPlacement(new ComponentId(101)))
+                || !new DeviceId(2).equals(system.getPlacement(new ComponentId(102)))
+                || !new DeviceId(1).equals(system.getPlacement(new ComponentId(103)))) {
+            failure = "Wrong placement after rotation and swap";
+        }
+
+        try {
+            system.rotate(List.of(new CompTransfImpl(101, 3, 1, 103), new CompTransfImpl(102, 2, 3, 101)));
+            failure = "Transfers not forming a rotation were accepted";
+        } catch (IllegalArgumentException e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+
+        // The first participant fails at once, the call still waits for the others; its slot is handed over anyway
+        prepared.clear();
+        prepared.add(new ComponentId(101));
+        try {
+            system.rotate(List.of(
+                    new FailingTransfImpl(101, 3, 1),
+                    new CompTransfImpl(103, 1, 2, 102),
+                    new CompTransfImpl(102, 2, 3, 101)
+            ));
+            failure = "Failure of the first participant not reported";
+        } catch (IllegalStateException e) {
+            if (!performed.containsAll(Set.of(new ComponentId(102), new ComponentId(103)))) {
+                failure = "Rotation returned before its participants finished: " + performed;
+            }
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        if (!new DeviceId(3).equals(system.getPlacement(new ComponentId(101)))
+                || !new DeviceId(3).equals(system.getPlacement(new ComponentId(102)))
+                || !new DeviceId(2).equals(system.getPlacement(new ComponentId(103)))) {
+            failure = "Wrong placement after a failed rotation";
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final ComponentId replacedId;
+
+        public CompTransfImpl(int compId, int srcDevId, int dstDevId, int replacedId) {
+            this.compId = new ComponentId(compId);
+            this.srcDevId = new DeviceId(srcDevId);
+            this.dstDevId = new DeviceId(dstDevId);
+            this.replacedId = new ComponentId(replacedId);
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            sleep(10);
+            prepared.add(this.compId);
+        }
+
+        @Override
+        public void perform() {
+            if (!prepared.contains(this.replacedId)) {
+                failure = "Transfer of " + this.compId + " performed before " + this.replacedId + " was prepared";
+            }
+            sleep(10);
+            performed.add(this.compId);
+        }
+    }
+
+    private final static class FailingTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+
+        public FailingTransfImpl(int compId, int srcDevId, int dstDevId) {
+            this.compId = new ComponentId(compId);
+            this.srcDevId = new DeviceId(srcDevId);
+            this.dstDevId = new DeviceId(dstDevId);
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            throw new IllegalStateException("prepare failure");
+        }
+
+        @Override
+        public void perform() {
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,217 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+public class ScanTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+        DeviceId dev4 = new DeviceId(4);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+        ComponentId comp3 = new ComponentId(103);
+        ComponentId comp4 = new ComponentId(104);
+        ComponentId comp5 = new ComponentId(105);
+        ComponentId comp6 = new ComponentId(106);
+        ComponentId comp7 = new ComponentId(107);
+        ComponentId comp8 = new ComponentId(108);
+        ComponentId comp9 = new ComponentId(109);
+        ComponentId comp10 = new ComponentId(110);
+        ComponentId comp11 = new ComponentId(111);
+        ComponentId comp12 = new ComponentId(112);
+        ComponentId comp13 = new ComponentId(113);
+        ComponentId comp14 = new ComponentId(114);
+        ComponentId comp15 = new ComponentId(115);
+        ComponentId comp16 = new ComponentId(116);
+        ComponentId comp17 = new ComponentId(117);
+        ComponentId comp18 = new ComponentId(118);
+        ComponentId comp19 = new ComponentId(119);
+        ComponentId comp20 = new ComponentId(120);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(4);
+        deviceCapacities.put(dev1, 10);
+        deviceCapacities.put(dev2, 10);
+        deviceCapacities.put(dev3, 10);
+        deviceCapacities.put(dev4, 10);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(20);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev1);
+        initialComponentMapping.put(comp3, dev1);
+        initialComponentMapping.put(comp4, dev1);
+        initialComponentMapping.put(comp5, dev1);
+        initialComponentMapping.put(comp6, dev2);
+        initialComponentMapping.put(comp7, dev2);
+        initialComponentMapping.put(comp8, dev2);
+        initialComponentMapping.put(comp9, dev2);
+        initialComponentMapping.put(comp10, dev2);
+        initialComponentMapping.put(comp11, dev3);
+        initialComponentMapping.put(comp12, dev3);
+        initialComponentMapping.put(comp13, dev3);
+        initialComponentMapping.put(comp14, dev3);
+        initialComponentMapping.put(comp15, dev3);
+        initialComponentMapping.put(comp16, dev4);
+        initialComponentMapping.put(comp17, dev4);
+        initialComponentMapping.put(comp18, dev4);
+        initialComponentMapping.put(comp19, dev4);
+        initialComponentMapping.put(comp20, dev4);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        // Components 111-120 keep moving between DEV-3 and DEV-4 while the others stay put
+        List<Thread> movers = new ArrayList<>();
+        for (int c = 111; c <= 120; ++c) {
+            int compId = c;
+            movers.add(new Thread(() -> {
+                int at = compId <= 115 ? 3 : 4;
+                for (int i = 0; i < 20; ++i) {
+                    executeTransfer(system, compId, at, 7 - at, 1);
+                    at = 7 - at;
+                }
+            }));
+        }
+        movers.forEach(Thread::start);
+
+        for (int round = 0; round < 20; ++round) {
+            Map<ComponentId, Long> seen = StreamSupport.stream(system.scanComponents(), true)
+                    .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+            for (int c = 101; c <= 120; ++c) {
+                Long times = seen.get(new ComponentId(c));
+                if ((c <= 110 && times == null) || (times != null && times != 1)) {
+                    failure = "Component " + c + " reported " + times + " times";
+                }
+            }
+            if (seen.size() > 20) {
+                failure = "System scan reported " + seen.size() + " components";
+            }
+            List<ComponentId> onDev1 = StreamSupport.stream(system.scanDevice(new DeviceId(1)), true)
+                    .sorted().collect(Collectors.toList());
+            if (onDev1.size() != 5 || !onDev1.get(0).equals(new ComponentId(101))
+                    || !onDev1.get(4).equals(new ComponentId(105))) {
+                failure = "Device scan reported " + onDev1;
+            }
+        }
+        movers.forEach(ScanTest::join);
+
+        try {
+            system.scanDevice(new DeviceId(5));
+            failure = "Scan of an unknown device accepted";
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
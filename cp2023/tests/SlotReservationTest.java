@@ -0,0 +1,192 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.ReservationExpired;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.SlotReservation;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
+public class SlotReservationTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+
+        ComponentId comp1 = new ComponentId(101);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(1);
+        deviceCapacities.put(dev1, 2);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(1);
+
+        initialComponentMapping.put(comp1, dev1);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+
+        // User traffic waits for the reserved slot until the lease expires
+        SlotReservation expiring = system.reserveSlots(dev1, 1, 50);
+        Thread adder = new Thread(() -> executeTransfer(system, 103, 0, 1, 10));
+        adder.start();
+        sleep(20);
+        if (!adder.isAlive()) {
+            failure = "Transfer took a reserved slot";
+        }
+        join(adder);
+        if (expiring.getRemainingSlots() != 0) {
+            failure = "Expired reservation still holds slots";
+        }
+        if (system.reserveSlots(dev1, 1, 1000) != null) {
+            failure = "Reserved a slot on a full device";
+        }
+
+        // Transfers with the token do not queue, an exhausted token is refused
+        executeTransfer(system, 103, 1, 0, 10);
+        SlotReservation reservation = system.reserveSlots(dev1, 1, 1000);
+        try {
+            system.execute(new CompTransfImpl(new ComponentId(104), null, dev1, 10), reservation);
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        try {
+            system.execute(new CompTransfImpl(new ComponentId(105), null, dev1, 10), reservation);
+            failure = "Transfer with a used up reservation succeeded";
+        } catch (ReservationExpired e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+
+        // A reservation on a device shrunk meanwhile is still honoured over capacity, never queued,
+        // and decommissioning the device afterwards leaves the system usable
+        executeTransfer(system, 104, 1, 0, 10);
+        SlotReservation shrunk = system.reserveSlots(dev1, 1, 1000);
+        system.resizeDevice(dev1, 1);
+        Thread holder = new Thread(() -> {
+            try {
+                system.execute(new CompTransfImpl(new ComponentId(106), null, dev1, 10), shrunk);
+            } catch (TransferException e) {
+                failure = "Unexpected transfer exception: " + e.toString();
+            }
+        });
+        holder.start();
+        try {
+            holder.join(1000);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+        if (holder.isAlive()) {
+            failure = "Transfer with a reservation queued on a shrunk device";
+        }
+        CompletableFuture<Void> drained = system.decommissionDevice(dev1);
+        executeTransfer(system, 101, 1, 0, 10);
+        join(holder);
+        executeTransfer(system, 106, 1, 0, 10);
+        if (!drained.isDone()) {
+            failure = "Decommissioned device not drained";
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,239 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.SpeculativelyPreparable;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SpeculativeFailureTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, 1);
+        deviceCapacities.put(dev2, 1);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        // The closing transfer of a cycle gets the source slot of a speculative member whose prepare fails
+        StorageSystemImp system = setupSystem();
+        CountDownLatch preparing = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        Thread speculative = new Thread(() -> executeFailing(system,
+                new FailingTransfImpl(new ComponentId(101), dev1, dev2, preparing, fail)));
+        speculative.start();
+        await(preparing);
+        Thread closing = new Thread(() -> executeTransfer(system, 102, 2, 1, fail));
+        closing.start();
+        join(speculative);
+        join(closing);
+        expectPlacement(system, 101, dev1);
+        expectPlacement(system, 102, dev1);
+
+        // Same for a group member swapping places with the speculative transfer
+        StorageSystemImp grouped = setupSystem();
+        CountDownLatch groupPreparing = new CountDownLatch(1);
+        CountDownLatch groupFail = new CountDownLatch(1);
+        Thread partner = new Thread(() -> executeFailing(grouped,
+                new FailingTransfImpl(new ComponentId(102), dev2, dev1, groupPreparing, groupFail)));
+        partner.start();
+        await(groupPreparing);
+        Thread group = new Thread(() -> {
+            try {
+                grouped.executeGroup(List.of(new CompTransfImpl(new ComponentId(101), dev1, dev2, groupFail)));
+            } catch (TransferException e) {
+                failure = "Unexpected transfer exception: " + e.toString();
+            }
+        });
+        group.start();
+        join(partner);
+        join(group);
+        expectPlacement(grouped, 101, dev2);
+        expectPlacement(grouped, 102, dev2);
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private final static void expectPlacement(StorageSystemImp system, int compId, DeviceId device) {
+        DeviceId placement = system.getPlacement(new ComponentId(compId));
+        if (!device.equals(placement)) {
+            failure = "Component " + compId + " placed on " + placement + " instead of " + device;
+        }
+    }
+
+    private final static void executeFailing(StorageSystemImp system, ComponentTransfer transfer) {
+        try {
+            system.execute(transfer);
+            failure = "Failing transfer of " + transfer.getComponentId() + " succeeded";
+        } catch (IllegalStateException e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            CountDownLatch prepared
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    prepared
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    // Bounded, so a lost slot fails the test instead of hanging it
+    private final static void join(Thread thread) {
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+        if (thread.isAlive()) {
+            throw new RuntimeException("Transfer still waiting for a slot after a failed speculative prepare");
+        }
+    }
+
+    private final static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new RuntimeException("Transfer never started preparing");
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    // Prepares while queued and fails once the other transfer has taken over its source slot
+    private final static class FailingTransfImpl implements SpeculativelyPreparable {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final CountDownLatch preparing;
+        private final CountDownLatch fail;
+
+        public FailingTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId,
+                                 CountDownLatch preparing, CountDownLatch fail) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.preparing = preparing;
+            this.fail = fail;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            this.preparing.countDown();
+            await(this.fail);
+            throw new IllegalStateException("prepare of " + this.compId + " failed");
+        }
+
+        @Override
+        public void perform() {
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final CountDownLatch prepared;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, CountDownLatch prepared) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.prepared = prepared;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            this.prepared.countDown();
+        }
+
+        @Override
+        public void perform() {
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
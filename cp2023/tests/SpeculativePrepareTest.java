@@ -0,0 +1,188 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.DeviceId;
+import cp2023.base.SpeculativelyPreparable;
+import cp2023.base.StorageSystem;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+public class SpeculativePrepareTest {
+
+    private static volatile long removalPrepared;
+    private static volatile String failure;
+
+    private static StorageSystem setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, 1);
+        deviceCapacities.put(dev2, 1);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+
+        return StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private final static Collection<Thread> setupTransferers(StorageSystem system) {
+        ArrayList<Thread> transferer = new ArrayList<>();
+        transferer.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Queued behind a full device, prepares right away
+                executeTransfer(system, 101, 1, 2, 30, 10, true);
+            }
+        }));
+        transferer.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sleep(20);
+                executeTransfer(system, 102, 2, 0, 30, 10, false);
+            }
+        }));
+        return transferer;
+    }
+    private static void runTest() {
+        removalPrepared = 0;
+        failure = null;
+        StorageSystem system = setupSystem();
+        Collection<Thread> users = setupTransferers(system);
+        runTransferers(users);
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+    private final static void runTransferers(Collection<Thread> users) {
+        for (Thread t : users) {
+            t.start();
+        }
+        for (Thread t : users) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("panic: unexpected thread interruption", e);
+            }
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystem system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long prepareDuration,
+            long performDuration,
+            boolean speculative
+    ) {
+        CompTransfImpl transfer = new CompTransfImpl(
+                new ComponentId(compId),
+                srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                prepareDuration,
+                performDuration,
+                speculative
+        );
+        try {
+            system.execute(transfer);
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements SpeculativelyPreparable {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long prepareDuration;
+        private final long performDuration;
+        private final boolean speculative;
+        private long prepareEnded;
+
+        public CompTransfImpl(
+                ComponentId compId,
+                DeviceId srcDevId,
+                DeviceId dstDevId,
+                long prepareDuration,
+                long performDuration,
+                boolean speculative
+        ) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.prepareDuration = prepareDuration;
+            this.performDuration = performDuration;
+            this.speculative = speculative;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            sleep(this.prepareDuration);
+            this.prepareEnded = System.nanoTime();
+            if (!this.speculative) {
+                removalPrepared = this.prepareEnded;
+            }
+        }
+
+        @Override
+        public void perform() {
+            if (this.speculative) {
+                long removal = removalPrepared;
+                if (removal == 0) {
+                    failure = "Transfer of " + this.compId + " performed before the slot was freed";
+                }
+                else if (this.prepareEnded >= removal) {
+                    failure = "Transfer of " + this.compId + " was not prepared while queued";
+                }
+            }
+            sleep(this.performDuration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,225 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.ComponentDoesNotNeedTransfer;
+import cp2023.exceptions.ComponentIsBeingOperatedOn;
+import cp2023.exceptions.DeviceOverloaded;
+import cp2023.exceptions.TransferException;
+import cp2023.exceptions.TransferSuperseded;
+import cp2023.solution.AdmissionControl;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.HashMap;
+
+public class SupersedeTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(3);
+        deviceCapacities.put(dev1, 1);
+        deviceCapacities.put(dev2, 1);
+        deviceCapacities.put(dev3, 1);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev3 = new DeviceId(3);
+
+        // A queued move is withdrawn and the component goes straight to the new destination
+        Thread superseded = new Thread(() -> {
+            try {
+                system.execute(new CompTransfImpl(new ComponentId(101), dev1, new DeviceId(2), 10));
+                failure = "Superseded transfer completed";
+            } catch (TransferSuperseded e) {
+                // expected
+            } catch (TransferException e) {
+                failure = "Unexpected transfer exception: " + e.toString();
+            }
+        });
+        superseded.start();
+        sleep(20);
+        supersede(system, 101, 1, 3);
+        join(superseded);
+        if (!isPlaced(system, 101, dev3)) {
+            failure = "Superseding transfer did not complete";
+        }
+
+        // Without a queued transfer it behaves like execute
+        supersede(system, 102, 2, 1);
+        if (!isPlaced(system, 102, dev1)) {
+            failure = "Superseding transfer without a queued one did not complete";
+        }
+
+        // A transfer that already holds a slot cannot be superseded
+        Thread running = new Thread(() -> executeTransfer(system, 102, 1, 2, 50));
+        running.start();
+        sleep(20);
+        try {
+            system.supersede(new CompTransfImpl(new ComponentId(102), dev1, dev3, 10));
+            failure = "Started transfer superseded";
+        } catch (ComponentIsBeingOperatedOn e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        join(running);
+
+        // A new transfer rejected by admission control leaves the queued one in place
+        StorageSystemImp limited = setupSystem();
+        executeTransfer(limited, 103, 0, 3, 10);
+        Thread queued = new Thread(() -> executeTransfer(limited, 101, 1, 2, 10));
+        queued.start();
+        sleep(20);
+        Thread waiting = new Thread(() -> executeTransfer(limited, 104, 0, 3, 10));
+        waiting.start();
+        sleep(20);
+        limited.setAdmissionControl(new AdmissionControl(1, 0, AdmissionControl.OverloadPolicy.REJECT));
+        try {
+            limited.supersede(new CompTransfImpl(new ComponentId(101), dev1, dev3, 10));
+            failure = "Superseding transfer admitted to a full queue";
+        } catch (DeviceOverloaded e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+        executeTransfer(limited, 102, 2, 0, 10);
+        join(queued);
+        if (!isPlaced(limited, 101, new DeviceId(2))) {
+            failure = "Queued transfer did not complete after a rejected supersede";
+        }
+        executeTransfer(limited, 103, 3, 0, 10);
+        join(waiting);
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static void supersede(StorageSystemImp system, int compId, int srcDevId, int dstDevId) {
+        try {
+            system.supersede(new CompTransfImpl(new ComponentId(compId), new DeviceId(srcDevId),
+                    new DeviceId(dstDevId), 10));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    // Only the device holding a component can be both source and destination of its transfer
+    private static boolean isPlaced(StorageSystemImp system, int compId, DeviceId device) {
+        try {
+            system.execute(new CompTransfImpl(new ComponentId(compId), device, device, 0));
+        } catch (ComponentDoesNotNeedTransfer e) {
+            return true;
+        } catch (TransferException e) {
+            return false;
+        }
+        return false;
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,314 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.MultiDestinationTransfer;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.PerformLimiter;
+import cp2023.solution.SlotReservation;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+import cp2023.solution.Topology;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TopologyLimitTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+        DeviceId dev4 = new DeviceId(4);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(4);
+        deviceCapacities.put(dev1, 4);
+        deviceCapacities.put(dev2, 4);
+        deviceCapacities.put(dev3, 4);
+        deviceCapacities.put(dev4, 4);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev1);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+        DeviceId dev4 = new DeviceId(4);
+        Topology topology = new Topology();
+        topology.place(dev1, "h1", "r1");
+        topology.place(dev2, "h1", "r1");
+        topology.place(dev3, "h2", "r1");
+        topology.place(dev4, "h3", "r2");
+        system.setTopology(topology);
+
+        // The cheapest destination is taken although all have room
+        MultiDestTransfImpl cheapest = new MultiDestTransfImpl(new ComponentId(101), dev1, dev4, List.of(dev3, dev2), 1);
+        executeTransfer(system, cheapest, null);
+        if (!dev2.equals(system.getPlacement(new ComponentId(101)))) {
+            failure = "Cheapest destination not taken: " + system.getPlacement(new ComponentId(101));
+        }
+
+        // A reserved destination is kept even if it is the most expensive one
+        SlotReservation reservation = system.reserveSlots(dev4, 1, 10000);
+        executeTransfer(system, new MultiDestTransfImpl(new ComponentId(102), dev1, dev4, List.of(dev2), 1), reservation);
+        if (!dev4.equals(system.getPlacement(new ComponentId(102)))) {
+            failure = "Reserved destination not kept: " + system.getPlacement(new ComponentId(102));
+        }
+
+        // Transfers touching one host perform one at a time, also across a topology change
+        PerformLimiter limiter = new PerformLimiter(0, 0, 0);
+        limiter.setTopology(topology, 1, 0);
+        system.setPerformLimiter(limiter);
+        if (maxConcurrentAdds(system, 103, dev2, dev2) != 1) {
+            failure = "Host limit not respected";
+        }
+        running.set(0);
+        maxRunning.set(0);
+        Thread before = new Thread(() -> executeTransfer(system, new CountedTransfImpl(105, dev1, 40), null));
+        before.start();
+        sleep(10);
+        limiter.setTopology(topology, 1, 0);
+        executeTransfer(system, new CountedTransfImpl(106, dev2, 10), null);
+        join(before);
+        if (maxRunning.get() != 1) {
+            failure = "Host limit exceeded after a topology change";
+        }
+
+        // Only the rack is limited now, the other rack is not affected
+        limiter.setTopology(topology, 0, 1);
+        if (maxConcurrentAdds(system, 107, dev1, dev3) != 1) {
+            failure = "Rack limit not respected";
+        }
+        if (maxConcurrentAdds(system, 109, dev3, dev4) != 2) {
+            failure = "Rack limit applied to another rack";
+        }
+
+        // Raising the limit lets more transfers in at once
+        limiter.setTopology(topology, 2, 0);
+        if (maxConcurrentAdds(system, 111, dev1, dev1) != 2) {
+            failure = "Raised host limit not applied";
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static final AtomicInteger running = new AtomicInteger();
+    private static final AtomicInteger maxRunning = new AtomicInteger();
+
+    // Adds a component to each of the devices at once, returns how many performed at the same time
+    private final static int maxConcurrentAdds(StorageSystemImp system, int firstId, DeviceId... devices) {
+        running.set(0);
+        maxRunning.set(0);
+        List<Thread> adders = new ArrayList<>();
+        for (int i = 0; i < devices.length; ++i) {
+            CountedTransfImpl transfer = new CountedTransfImpl(firstId + i, devices[i], 30);
+            adders.add(new Thread(() -> executeTransfer(system, transfer, null)));
+        }
+        adders.forEach(Thread::start);
+        adders.forEach(TopologyLimitTest::join);
+        return maxRunning.get();
+    }
+
+    private final static void executeTransfer(StorageSystemImp system, ComponentTransfer transfer,
+                                              SlotReservation reservation) {
+        try {
+            system.execute(transfer, reservation);
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static class CountedTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CountedTransfImpl(int compId, DeviceId dstDevId, long duration) {
+            this.compId = new ComponentId(compId);
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return null;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(this.duration);
+            running.decrementAndGet();
+        }
+    }
+
+    private final static class MultiDestTransfImpl implements MultiDestinationTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private volatile DeviceId dstDevId;
+        private final List<DeviceId> alternatives;
+        private final long duration;
+
+        public MultiDestTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId,
+                                   List<DeviceId> alternatives, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.alternatives = alternatives;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public List<DeviceId> getAlternativeDestinationIds() {
+            return this.alternatives;
+        }
+
+        @Override
+        public void reroute(DeviceId destination) {
+            this.dstDevId = destination;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
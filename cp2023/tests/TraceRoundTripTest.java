@@ -0,0 +1,215 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.base.StorageSystem;
+import cp2023.exceptions.ComponentDoesNotExist;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+import cp2023.solution.Trace;
+import cp2023.solution.TraceRecorder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TraceRoundTripTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, 2);
+        deviceCapacities.put(dev2, 1);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        Map<DeviceId, Integer> capacities = Map.of(dev1, 2, dev2, 1);
+        Map<ComponentId, DeviceId> placement = Map.of(new ComponentId(101), dev1, new ComponentId(102), dev2);
+        // An error thrown by the system is recorded as such, not as a completed transfer
+        StorageSystem failing = transfer -> {
+            if (transfer.getComponentId().getId() == 105) {
+                throw new AssertionError("injected");
+            }
+            system.execute(transfer);
+        };
+
+        Path file;
+        try {
+            file = Files.createTempFile("trace", ".bin");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try (TraceRecorder recorder = new TraceRecorder(failing, file, capacities, placement)) {
+            record(recorder, new CompTransfImpl(new ComponentId(103), null, dev1, 5), null);
+            record(recorder, new CompTransfImpl(new ComponentId(104), dev1, dev2, 5), ComponentDoesNotExist.class);
+            record(recorder, new CompTransfImpl(new ComponentId(102), dev2, null, 5), null);
+            record(recorder, new CompTransfImpl(new ComponentId(105), dev1, dev2, 5), AssertionError.class);
+            if (recorder.getRecordedTransfers() != 4) {
+                failure = "Recorded " + recorder.getRecordedTransfers() + " transfers";
+            }
+        }
+
+        Trace trace = Trace.read(file);
+        try {
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!trace.getCapacities().equals(capacities) || !trace.getPlacement().equals(placement)) {
+            failure = "Header not read back: " + trace.getCapacities() + " " + trace.getPlacement();
+        }
+        List<Trace.Record> records = trace.getRecords();
+        List<Trace.Outcome> expected = List.of(Trace.Outcome.COMPLETED, Trace.Outcome.COMPONENT_DOES_NOT_EXIST,
+                Trace.Outcome.COMPLETED, Trace.Outcome.ERROR);
+        if (records.size() != expected.size()) {
+            throw new RuntimeException("Read " + records.size() + " records");
+        }
+        for (int i = 0; i < records.size(); ++i) {
+            if (records.get(i).getOutcome() != expected.get(i)) {
+                failure = "Record " + i + " read back as " + records.get(i).getOutcome();
+            }
+        }
+        Trace.Record addition = records.get(0);
+        if (addition.getComponentId().getId() != 103 || addition.getSourceDeviceId() != null
+                || !dev1.equals(addition.getDestinationDeviceId()) || addition.getPerformNanos() < 5_000_000
+                || addition.getLatencyNanos() < addition.getPerformNanos()) {
+            failure = "Addition read back wrong";
+        }
+        if (records.get(1).getPrepareNanos() != -1 || records.get(1).getPerformNanos() != -1) {
+            failure = "Rejected transfer has phase durations";
+        }
+        if (!dev2.equals(records.get(2).getSourceDeviceId()) || records.get(2).getDestinationDeviceId() != null) {
+            failure = "Removal read back wrong";
+        }
+        if (records.get(0).getArrivalNanos() > records.get(1).getArrivalNanos()
+                || records.get(2).getArrivalNanos() > records.get(3).getArrivalNanos()) {
+            failure = "Records not sorted by arrival";
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private final static void record(TraceRecorder recorder, ComponentTransfer transfer, Class<?> expected) {
+        Throwable thrown = null;
+        try {
+            recorder.execute(transfer);
+        } catch (TransferException | RuntimeException | Error e) {
+            thrown = e;
+        }
+        if (expected == null ? thrown != null : !expected.isInstance(thrown)) {
+            failure = "Transfer of " + transfer.getComponentId() + " ended with " + thrown;
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,231 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+
+import java.util.HashMap;
+
+public class TransferFailureTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(2);
+        deviceCapacities.put(dev1, 2);
+        deviceCapacities.put(dev2, 2);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(2);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+
+        // A failed prepare leaves the component on its source and frees the destination slot
+        executeFailing(system, 101, 1, 2, true);
+        expectPlacement(system, 101, dev1);
+        executeTransfer(system, 103, 0, 2, 10);
+        expectPlacement(system, 103, dev2);
+
+        // A failed perform puts the component back while its source has room
+        executeFailing(system, 101, 1, 0, false);
+        expectPlacement(system, 101, dev1);
+
+        // The slot of a failed removal is still handed to the queued transfer
+        Thread adder = new Thread(() -> executeTransfer(system, 104, 0, 2, 10));
+        adder.start();
+        sleep(20);
+        executeFailing(system, 102, 2, 0, true);
+        join(adder);
+        expectPlacement(system, 102, dev2);
+        expectPlacement(system, 104, dev2);
+        executeTransfer(system, 102, 2, 0, 10);
+        executeTransfer(system, 104, 2, 0, 10);
+        executeTransfer(system, 103, 2, 0, 10);
+        executeTransfer(system, 101, 1, 2, 10);
+        expectPlacement(system, 101, dev2);
+
+        // The source slot was promised during prepare: the component stays and the device is over capacity
+        executeTransfer(system, 105, 0, 2, 10);
+        Thread promised = new Thread(() -> executeTransfer(system, 106, 0, 2, 10));
+        promised.start();
+        sleep(20);
+        executeFailing(system, 101, 2, 1, true);
+        join(promised);
+        expectPlacement(system, 101, dev2);
+        expectPlacement(system, 106, dev2);
+
+        // The extra slot is paid back before anyone else gets in
+        Thread payer = new Thread(() -> executeTransfer(system, 107, 0, 2, 10));
+        payer.start();
+        sleep(20);
+        executeTransfer(system, 105, 2, 0, 10);
+        sleep(20);
+        if (system.getPlacement(new ComponentId(107)) != null) {
+            failure = "Slot of a device over capacity given away";
+        }
+        executeTransfer(system, 106, 2, 0, 10);
+        join(payer);
+        expectPlacement(system, 107, dev2);
+
+        // Same after a failed perform, the move does not stay on its destination
+        Thread taker = new Thread(() -> executeTransfer(system, 108, 0, 2, 10));
+        taker.start();
+        sleep(20);
+        executeFailing(system, 101, 2, 1, false);
+        join(taker);
+        expectPlacement(system, 101, dev2);
+        expectPlacement(system, 108, dev2);
+        executeTransfer(system, 109, 0, 1, 10);
+        executeTransfer(system, 110, 0, 1, 10);
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private final static void expectPlacement(StorageSystemImp system, int compId, DeviceId device) {
+        DeviceId placement = system.getPlacement(new ComponentId(compId));
+        if (!device.equals(placement)) {
+            failure = "Component " + compId + " placed on " + placement + " instead of " + device;
+        }
+    }
+
+    private final static void executeFailing(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            boolean failPrepare
+    ) {
+        CompTransfImpl transfer = new CompTransfImpl(
+                new ComponentId(compId),
+                srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                10
+        );
+        transfer.failPrepare = failPrepare;
+        transfer.failPerform = !failPrepare;
+        try {
+            system.execute(transfer);
+            failure = "Failing transfer of " + compId + " succeeded";
+        } catch (IllegalStateException e) {
+            // expected
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+        private boolean failPrepare;
+        private boolean failPerform;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+            sleep(this.duration);
+            if (this.failPrepare) {
+                throw new IllegalStateException("prepare of " + this.compId + " failed");
+            }
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+            if (this.failPerform) {
+                throw new IllegalStateException("perform of " + this.compId + " failed");
+            }
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}
@@ -0,0 +1,175 @@
+package cp2023.tests;
+
+import cp2023.base.ComponentId;
+import cp2023.base.ComponentTransfer;
+import cp2023.base.DeviceId;
+import cp2023.exceptions.TransferException;
+import cp2023.solution.StorageSystemFactory;
+import cp2023.solution.StorageSystemImp;
+import cp2023.solution.TransferWatchdog;
+import cp2023.solution.WaitGraph;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TransferWatchdogTest {
+
+    private static volatile String failure;
+
+    private static StorageSystemImp setupSystem() {
+        DeviceId dev1 = new DeviceId(1);
+        DeviceId dev2 = new DeviceId(2);
+        DeviceId dev3 = new DeviceId(3);
+
+        ComponentId comp1 = new ComponentId(101);
+        ComponentId comp2 = new ComponentId(102);
+        ComponentId comp3 = new ComponentId(103);
+
+        HashMap<DeviceId, Integer> deviceCapacities = new HashMap<>(3);
+        deviceCapacities.put(dev1, 1);
+        deviceCapacities.put(dev2, 1);
+        deviceCapacities.put(dev3, 1);
+
+        HashMap<ComponentId, DeviceId> initialComponentMapping = new HashMap<>(3);
+
+        initialComponentMapping.put(comp1, dev1);
+        initialComponentMapping.put(comp2, dev2);
+        initialComponentMapping.put(comp3, dev3);
+
+        return (StorageSystemImp) StorageSystemFactory.newSystem(deviceCapacities, initialComponentMapping);
+    }
+    private static void runTest() {
+        failure = null;
+        StorageSystemImp system = setupSystem();
+        AtomicInteger calls = new AtomicInteger();
+        // A failing listener must not stop the checks
+        TransferWatchdog watchdog = new TransferWatchdog(system, 30, 5, (graph, overdue) -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("listener failure");
+        });
+        watchdog.start();
+
+        // Stalled on the full DEV-1 for many periods, one alarm
+        Thread stalled = new Thread(() -> executeTransfer(system, 102, 2, 1, 10));
+        stalled.start();
+        sleep(150);
+        WaitGraph graph = watchdog.dump();
+        if (graph.getWaiters().size() != 1 || graph.getWaiters().get(0).getKind() != WaitGraph.Kind.QUEUED) {
+            failure = "Expected one queued waiter: " + graph.toJson();
+        }
+        if (watchdog.getAlarms() != 1 || calls.get() != 1) {
+            failure = "Expected one alarm, got " + watchdog.getAlarms() + " after " + calls.get() + " calls";
+        }
+        executeTransfer(system, 101, 1, 0, 10);
+        join(stalled);
+
+        // Another stall still raises its own alarm
+        stalled = new Thread(() -> executeTransfer(system, 103, 3, 1, 10));
+        stalled.start();
+        sleep(150);
+        executeTransfer(system, 102, 1, 0, 10);
+        join(stalled);
+        watchdog.stop();
+        if (watchdog.getAlarms() != 2 || calls.get() != 2) {
+            failure = "Expected two alarms, got " + watchdog.getAlarms() + " after " + calls.get() + " calls";
+        }
+        if (watchdog.getFailures() != 2 || !(watchdog.getLastFailure() instanceof IllegalStateException)) {
+            failure = "Listener failures not recorded: " + watchdog.getFailures() + ", " + watchdog.getLastFailure();
+        }
+        if (!watchdog.dump().getWaiters().isEmpty()) {
+            failure = "Waiters left: " + watchdog.dump().toJson();
+        }
+
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private final static void executeTransfer(
+            StorageSystemImp system,
+            int compId,
+            int srcDevId,
+            int dstDevId,
+            long duration
+    ) {
+        try {
+            system.execute(new CompTransfImpl(
+                    new ComponentId(compId),
+                    srcDevId > 0 ? new DeviceId(srcDevId) : null,
+                    dstDevId > 0 ? new DeviceId(dstDevId) : null,
+                    duration
+            ));
+        } catch (TransferException e) {
+            failure = "Unexpected transfer exception: " + e.toString();
+        }
+    }
+
+    private final static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static void sleep(long duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("panic: unexpected thread interruption", e);
+        }
+    }
+
+    private final static class CompTransfImpl implements ComponentTransfer {
+        private final ComponentId compId;
+        private final DeviceId srcDevId;
+        private final DeviceId dstDevId;
+        private final long duration;
+
+        public CompTransfImpl(ComponentId compId, DeviceId srcDevId, DeviceId dstDevId, long duration) {
+            this.compId = compId;
+            this.srcDevId = srcDevId;
+            this.dstDevId = dstDevId;
+            this.duration = duration;
+        }
+
+        @Override
+        public ComponentId getComponentId() {
+            return this.compId;
+        }
+
+        @Override
+        public DeviceId getSourceDeviceId() {
+            return this.srcDevId;
+        }
+
+        @Override
+        public DeviceId getDestinationDeviceId() {
+            return this.dstDevId;
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void perform() {
+            sleep(this.duration);
+        }
+    }
+    private static boolean runTests(int n) {
+        for (int i = 0; i < n; ++i) {
+            try {
+                runTest();
+            } catch (Exception e) {
+                System.out.println("ERROR! " + e.getMessage());
+                return false;
+            }
+            System.out.println("------------------------------------------------------------------");
+        }
+        return true;
+    }
+    public static void main(String[] args) {
+        runTests(50);
+    }
+}